@@ -4,9 +4,9 @@ import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.Executors;
 import javax.annotation.Nonnull;
 import magpiebridge.jimplelsp.JimpleLspServer;
+import magpiebridge.jimplelsp.RequestScheduler;
 import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.io.output.TeeOutputStream;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
@@ -45,7 +45,7 @@ public class Main {
                   .setRemoteInterface(LanguageClient.class)
                   .setInput(logStream(socket.getInputStream(), "serverOut"))
                   .setOutput(logStream(socket.getOutputStream(), "serverIn"))
-                  .setExecutorService(Executors.newCachedThreadPool())
+                  .setExecutorService(RequestScheduler.newDispatchExecutor())
                   .traceMessages(new PrintWriter(System.out)) // TODO
                   .create();
           launcher.startListening();
@@ -61,7 +61,11 @@ public class Main {
       JimpleLspServer server = new JimpleLspServer();
       Launcher<LanguageClient> l =
           LSPLauncher.createServerLauncher(
-              server, logStream(System.in, "serverOut"), logStream(System.out, "serverIn"));
+              server,
+              logStream(System.in, "serverOut"),
+              logStream(System.out, "serverIn"),
+              RequestScheduler.newDispatchExecutor(),
+              null);
       l.startListening();
       server.connect(l.getRemoteProxy());
     }
@@ -0,0 +1,60 @@
+package magpiebridge.jimplelsp;
+
+import de.upb.swt.soot.core.frontend.SootClassSource;
+import de.upb.swt.soot.core.model.SootClass;
+import de.upb.swt.soot.core.model.SourceType;
+import de.upb.swt.soot.core.types.ClassType;
+import java.util.Optional;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The IncrementalClassView holds the SootClasses of the workspace. Instead of creating a whole new
+ * View whenever a document changes, only the SootClass of the changed SootClassSource is swapped.
+ * Unchanged SootClasses are kept, so their already resolved members don't need to be resolved
+ * again.
+ *
+ * <p>It is immutable: an update returns a new IncrementalClassView which shares the unchanged part
+ * of the class mapping with this one.
+ */
+final class IncrementalClassView {
+  static final IncrementalClassView EMPTY = new IncrementalClassView(PersistentMap.empty());
+
+  @Nonnull private final PersistentMap<ClassType, SootClass> classes;
+
+  private IncrementalClassView(@Nonnull PersistentMap<ClassType, SootClass> classes) {
+    this.classes = classes;
+  }
+
+  /**
+   * @return a view in which the SootClass of the previous SootClassSource (if it exists) is
+   *     replaced by a SootClass of the given SootClassSource
+   */
+  @Nonnull
+  IncrementalClassView update(
+      @Nullable SootClassSource oldSource, @Nonnull SootClassSource newSource) {
+    final IncrementalClassView view = oldSource == null ? this : remove(oldSource);
+    return new IncrementalClassView(
+        view.classes.plus(
+            newSource.getClassType(), new SootClass(newSource, SourceType.Application)));
+  }
+
+  /** @return a view without the SootClass if it still originates from the given SootClassSource */
+  @Nonnull
+  IncrementalClassView remove(@Nonnull SootClassSource source) {
+    final SootClass sc = classes.get(source.getClassType());
+    if (sc != null && sc.getClassSource() == source) {
+      return new IncrementalClassView(classes.minus(source.getClassType()));
+    }
+    return this;
+  }
+
+  @Nonnull
+  Optional<SootClass> getClass(@Nonnull ClassType classType) {
+    return Optional.ofNullable(classes.get(classType));
+  }
+
+  int size() {
+    return classes.size();
+  }
+}
@@ -0,0 +1,140 @@
+package magpiebridge.jimplelsp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.eclipse.lsp4j.ProgressParams;
+import org.eclipse.lsp4j.WorkDoneProgressBegin;
+import org.eclipse.lsp4j.WorkDoneProgressCreateParams;
+import org.eclipse.lsp4j.WorkDoneProgressEnd;
+import org.eclipse.lsp4j.WorkDoneProgressNotification;
+import org.eclipse.lsp4j.WorkDoneProgressReport;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.services.LanguageClient;
+
+/**
+ * The IndexingProgress reports the progress of the workspace indexing to the client via
+ * window/workDoneProgress: the amount of indexed files, the files per second and the estimated
+ * remaining time. Reports are sent at most every REPORT_INTERVAL_MILLIS. If the client does not
+ * support workDoneProgress (client == null) the files are just counted.
+ */
+class IndexingProgress {
+  private static final String TOKEN = "jimplelsp/indexing";
+  private static final String TITLE = "Indexing Jimple files";
+  private static final long REPORT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+  @Nullable private final LanguageClient client;
+  @Nonnull private final AtomicInteger indexedFiles = new AtomicInteger();
+  @Nonnull private final AtomicLong lastReportNanos = new AtomicLong();
+  private volatile int totalFiles = -1;
+  private long startNanos;
+
+  // guarded by this: the token may only be used once the client acknowledged its creation
+  private boolean created = false;
+  private boolean ended = false;
+
+  /** @param client the client to report to or null if it does not support workDoneProgress */
+  IndexingProgress(@Nullable LanguageClient client) {
+    this.client = client;
+  }
+
+  void begin() {
+    startNanos = System.nanoTime();
+    lastReportNanos.set(startNanos);
+    if (client == null) {
+      return;
+    }
+    client
+        .createProgress(new WorkDoneProgressCreateParams(Either.forLeft(TOKEN)))
+        .thenRun(this::created);
+  }
+
+  private synchronized void created() {
+    created = true;
+    final WorkDoneProgressBegin begin = new WorkDoneProgressBegin();
+    begin.setTitle(TITLE);
+    begin.setCancellable(false);
+    begin.setPercentage(0);
+    notify(begin);
+    if (ended) {
+      // indexing was faster than the client
+      notify(createEnd());
+    }
+  }
+
+  /** @param totalFiles amount of files to index - known once the workspace is scanned */
+  void setTotalFiles(int totalFiles) {
+    this.totalFiles = totalFiles;
+  }
+
+  void fileIndexed() {
+    indexedFiles.incrementAndGet();
+    final long now = System.nanoTime();
+    final long lastReport = lastReportNanos.get();
+    if (now - lastReport >= REPORT_INTERVAL_NANOS
+        && lastReportNanos.compareAndSet(lastReport, now)) {
+      report(now);
+    }
+  }
+
+  private synchronized void report(long now) {
+    if (!created || ended) {
+      return;
+    }
+    final int indexed = indexedFiles.get();
+    final int total = totalFiles;
+    final WorkDoneProgressReport report = new WorkDoneProgressReport();
+    report.setMessage(formatReport(indexed, total, now - startNanos));
+    if (total > 0) {
+      report.setPercentage(Math.min(100, indexed * 100 / total));
+    }
+    notify(report);
+  }
+
+  synchronized void end() {
+    if (ended) {
+      return;
+    }
+    ended = true;
+    if (created) {
+      notify(createEnd());
+    }
+  }
+
+  @Nonnull
+  private WorkDoneProgressEnd createEnd() {
+    final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    final WorkDoneProgressEnd end = new WorkDoneProgressEnd();
+    end.setMessage("Indexed " + indexedFiles.get() + " files in " + elapsedMillis + " ms");
+    return end;
+  }
+
+  private void notify(@Nonnull WorkDoneProgressNotification notification) {
+    if (client != null) {
+      client.notifyProgress(new ProgressParams(Either.forLeft(TOKEN), notification));
+    }
+  }
+
+  /** @return e.g. "1200/5000 files (400 files/s, ETA 10s)" */
+  @Nonnull
+  static String formatReport(int indexed, int total, long elapsedNanos) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(indexed);
+    if (total >= 0) {
+      sb.append('/').append(total);
+    }
+    sb.append(" files");
+    final double elapsedSeconds = elapsedNanos / 1e9;
+    if (indexed > 0 && elapsedSeconds > 0) {
+      final double filesPerSecond = indexed / elapsedSeconds;
+      sb.append(" (").append(Math.round(filesPerSecond)).append(" files/s");
+      if (total >= indexed) {
+        sb.append(", ETA ").append(Math.round((total - indexed) / filesPerSecond)).append('s');
+      }
+      sb.append(')');
+    }
+    return sb.toString();
+  }
+}
@@ -34,7 +34,12 @@ public class JimpleLsp {
                 "port",
                 true,
                 MessageFormat.format(
-                    "sets the port for socket mode, standard port is {0}", DEFAULT_PORT));
+                    "sets the port for socket mode, standard port is {0}", DEFAULT_PORT))
+            .addOption(
+                "v",
+                "virtual-threads",
+                false,
+                "run requests on virtual threads if the JVM supports them (Java 21+)");
 
     CommandLineParser parser = new DefaultParser();
 
@@ -45,6 +50,10 @@ public class JimpleLsp {
       System.exit(1);
     }
 
+    if (cmd.hasOption("virtual-threads")) {
+      System.setProperty(RequestScheduler.VIRTUAL_THREADS_PROPERTY, "true");
+    }
+
     Supplier<MagpieServer> createServer =
         () -> {
           ServerConfiguration config = new ServerConfiguration();
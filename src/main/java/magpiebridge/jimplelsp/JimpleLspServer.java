@@ -1,38 +1,57 @@
 package magpiebridge.jimplelsp;
 
-import de.upb.swt.soot.core.frontend.AbstractClassSource;
 import de.upb.swt.soot.core.frontend.ResolveException;
 import de.upb.swt.soot.core.frontend.SootClassSource;
 import de.upb.swt.soot.core.inputlocation.EagerInputLocation;
+import de.upb.swt.soot.core.model.SootClass;
+import de.upb.swt.soot.core.model.SourceType;
 import de.upb.swt.soot.core.types.ClassType;
-import de.upb.swt.soot.core.views.View;
 import de.upb.swt.soot.jimple.parser.JimpleConverter;
-import de.upb.swt.soot.jimple.parser.JimpleProject;
 import magpiebridge.core.MagpieServer;
 import magpiebridge.core.ServerConfiguration;
+import magpiebridge.jimplelsp.index.MethodOverrideIndex;
+import magpiebridge.jimplelsp.index.ReferenceIndex;
+import magpiebridge.jimplelsp.RequestScheduler.Priority;
+import magpiebridge.jimplelsp.index.SymbolIndex;
+import magpiebridge.jimplelsp.index.TypeHierarchyIndex;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Stream;
+import java.util.concurrent.RejectedExecutionException;
 
 import static magpiebridge.jimplelsp.Util.positionToDefRange;
 
 /** @author Markus Schmidt */
 public class JimpleLspServer extends MagpieServer {
+  /**
+   * the directory of the persisted workspace indices - defaults to ~/.jimplelsp, an empty value
+   * disables the persistence.
+   */
+  public static final String INDEX_DIR_PROPERTY = "jimplelsp.index.dir";
+
+  // readers use the current snapshot without locking, writers publish a new one (synchronized)
+  @Nonnull private volatile WorkspaceSnapshot workspace = WorkspaceSnapshot.EMPTY;
+  @Nonnull private final ReferenceIndex referenceIndex = new ReferenceIndex();
+  @Nonnull private final SymbolIndex symbolIndex = new SymbolIndex();
+  @Nonnull private final TypeHierarchyIndex typeHierarchyIndex = new TypeHierarchyIndex();
 
-  @Nonnull private final Map<String, SootClassSource> textDocumentClassMapping = new HashMap<>();
-  private View view;
-  private boolean isViewDirty = true;
+  @Nonnull
+  private final MethodOverrideIndex methodOverrideIndex =
+      new MethodOverrideIndex(typeHierarchyIndex);
+  @Nonnull private final RequestScheduler scheduler = new RequestScheduler();
 
   public JimpleLspServer() {
     super(new ServerConfiguration());
@@ -46,19 +65,91 @@ public class JimpleLspServer extends MagpieServer {
 
   @Nonnull
   public <T> CompletableFuture<T> pool(Callable<T> lambda) {
-    return CompletableFuture.supplyAsync(
+    return pool(Priority.INTERACTIVE, lambda);
+  }
+
+  @Nonnull
+  public <T> CompletableFuture<T> pool(CancellableCallable<T> lambda) {
+    return pool(Priority.INTERACTIVE, lambda);
+  }
+
+  @Nonnull
+  public <T> CompletableFuture<T> pool(@Nonnull Priority priority, Callable<T> lambda) {
+    return pool(priority, cancelChecker -> lambda.call());
+  }
+
+  /**
+   * runs the lambda in the executor of the given Priority. Cancelling the returned future (e.g. via
+   * $/cancelRequest) makes the CancelChecker throw on its next check - long running loops should
+   * check it regularly so that the worker is released as soon as possible. If the request is
+   * cancelled before the lambda started, it is not run at all. If the queue of the Priority is full
+   * the request is cancelled right away instead of piling up.
+   */
+  @Nonnull
+  public <T> CompletableFuture<T> pool(
+      @Nonnull Priority priority, CancellableCallable<T> lambda) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    final CancelChecker cancelChecker =
         () -> {
-          try {
-            return lambda.call();
-          } catch (ResolveException e) {
-            // TODO: send publishDiagnostics!
-            e.printStackTrace();
-          } catch (Throwable e) {
-            e.printStackTrace();
+          if (result.isCancelled()) {
+            throw new CancellationException();
           }
-          return null;
-        },
-        THREAD_POOL);
+        };
+    try {
+      scheduler.execute(
+          priority,
+          () -> {
+            if (result.isDone()) {
+              return;
+            }
+            try {
+              result.complete(lambda.call(cancelChecker));
+            } catch (CancellationException e) {
+              result.cancel(false);
+            } catch (ResolveException e) {
+              // TODO: send publishDiagnostics!
+              e.printStackTrace();
+              result.complete(null);
+            } catch (Throwable e) {
+              e.printStackTrace();
+              result.complete(null);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      result.cancel(false);
+    }
+    return result;
+  }
+
+  /** A Callable which checks whether its computation was cancelled in the meantime. */
+  @FunctionalInterface
+  public interface CancellableCallable<T> {
+    T call(@Nonnull CancelChecker cancelChecker) throws Exception;
+  }
+
+  @Nonnull
+  public RequestScheduler getScheduler() {
+    return scheduler;
+  }
+
+  @Nonnull
+  public ReferenceIndex getReferenceIndex() {
+    return referenceIndex;
+  }
+
+  @Nonnull
+  public SymbolIndex getSymbolIndex() {
+    return symbolIndex;
+  }
+
+  @Nonnull
+  public TypeHierarchyIndex getTypeHierarchyIndex() {
+    return typeHierarchyIndex;
+  }
+
+  @Nonnull
+  public MethodOverrideIndex getMethodOverrideIndex() {
+    return methodOverrideIndex;
   }
 
   @Nonnull
@@ -66,21 +157,57 @@ public class JimpleLspServer extends MagpieServer {
     return clientConfig;
   }
 
+  /** @return the current (immutable) state of the workspace's classes */
+  @Nonnull
+  WorkspaceSnapshot getWorkspaceSnapshot() {
+    return workspace;
+  }
+
   @Nonnull
-  public View getView() {
-    if (isViewDirty) {
-      view = recreateView();
-      isViewDirty = false;
+  public Optional<SootClass> getSootClass(@Nonnull ClassType classType) {
+    final WorkspaceSnapshot snapshot = workspace;
+    final Optional<SootClass> sc = snapshot.getClass(classType);
+    if (sc.isPresent()) {
+      return sc;
+    }
+    final String pendingUri = snapshot.getPendingUri(classType);
+    if (pendingUri != null && convertPending(pendingUri)) {
+      return workspace.getClass(classType);
     }
-    return view;
+    return Optional.empty();
   }
 
+  /**
+   * @return the classes of the workspace - classes which are restored from the IndexSnapshot are
+   *     not converted by this call
+   */
   @Nonnull
-  private View recreateView() {
-    Map<ClassType, AbstractClassSource> map = new HashMap<>();
-    textDocumentClassMapping.forEach((key, value) -> map.put(value.getClassType(), value));
-    final JimpleProject project = new JimpleProject(new EagerInputLocation(map));
-    return project.createFullView();
+  public Collection<ClassType> getClassTypes() {
+    return workspace.getClassTypes();
+  }
+
+  private boolean convertPending(@Nonnull String uri) {
+    final SootClassSource scs = convertFromDisk(uri);
+    if (scs == null) {
+      return false;
+    }
+    synchronized (this) {
+      // skip if it was updated in the meantime
+      if (!workspace.contains(uri)) {
+        update(uri, scs);
+      }
+    }
+    return true;
+  }
+
+  @Nullable
+  private SootClassSource convertFromDisk(@Nonnull String uri) {
+    try {
+      return convert(uri, CharStreams.fromPath(Util.uriToPath(uri)));
+    } catch (IOException exception) {
+      exception.printStackTrace();
+      return null;
+    }
   }
 
   public boolean quarantineInputOrUpdate(@Nonnull String uri) throws ResolveException, IOException {
@@ -94,18 +221,26 @@ public class JimpleLspServer extends MagpieServer {
 
   private boolean quarantineInputOrUpdate(@Nonnull String uri, @Nonnull CharStream charStream)
       throws ResolveException {
+    final SootClassSource scs = convert(uri, charStream);
+    if (scs == null) {
+      return false;
+    }
+    update(uri, scs);
+    return true;
+  }
+
+  /**
+   * parses the given input into a SootClassSource without touching the state of the server. Errors
+   * are fed into the diagnostics of the given uri.
+   *
+   * @return the SootClassSource or null if the input is not valid
+   */
+  @Nullable
+  SootClassSource convert(@Nonnull String uri, @Nonnull CharStream charStream) {
     final JimpleConverter jimpleConverter = new JimpleConverter();
     try {
-      SootClassSource scs =
-          jimpleConverter.run(charStream, new EagerInputLocation(), Util.uriToPath(uri));
       // input is clean
-      final SootClassSource overriden = textDocumentClassMapping.put(uri, scs);
-      if (overriden != null) {
-        // possible optimization: compare if classes are still equal -> set dirty bit only when
-        // necessary
-      }
-      isViewDirty = true;
-      return true;
+      return jimpleConverter.run(charStream, new EagerInputLocation(), Util.uriToPath(uri));
     } catch (ResolveException e) {
       // feed error into diagnostics
       final Diagnostic d =
@@ -115,7 +250,7 @@ public class JimpleLspServer extends MagpieServer {
               DiagnosticSeverity.Error,
               "JimpleParser");
       client.publishDiagnostics(new PublishDiagnosticsParams(uri, Collections.singletonList(d)));
-      return false;
+      return null;
     } catch (Exception e) {
       // feed error into diagnostics
       final Diagnostic d =
@@ -126,32 +261,87 @@ public class JimpleLspServer extends MagpieServer {
               "JimpleParser");
       // FIXME: merge with other diagnostics in magpie
       client.publishDiagnostics(new PublishDiagnosticsParams(uri, Collections.singletonList(d)));
-      return false;
+      return null;
     }
   }
 
+  private synchronized void update(@Nonnull String uri, @Nonnull SootClassSource scs) {
+    workspace = workspace.toBuilder().update(uri, scs).build();
+    typeHierarchyIndex.update(uri, scs.getClassType(), supertypesOf(scs));
+  }
+
+  /** @return the direct supertypes declared by the given class */
+  @Nonnull
+  static TypeHierarchyIndex.Supertypes supertypesOf(@Nonnull SootClassSource scs) {
+    final SootClass sc = new SootClass(scs, SourceType.Application);
+    return new TypeHierarchyIndex.Supertypes(sc.getSuperclass().orElse(null), sc.getInterfaces());
+  }
+
+  /**
+   * merges a batch of indexed classes of the workspace indexing. Documents which were updated in
+   * the meantime (e.g. opened by the client) are newer than the indexed files and are kept.
+   */
+  synchronized void updateAll(@Nonnull WorkspaceIndexer.Result indexed) {
+    final WorkspaceSnapshot.Builder builder = workspace.toBuilder();
+    indexed.classMapping.forEach(
+        (uri, scs) -> {
+          if (!builder.contains(uri)) {
+            builder.update(uri, scs);
+          }
+        });
+    indexed.restoredClassTypes.forEach(
+        (uri, classType) -> {
+          if (!builder.contains(uri)) {
+            builder.addPending(uri, classType);
+          }
+        });
+    workspace = builder.build();
+  }
+
   @Override
   public void exit() {
     // FIXME: don't die in development
+    ((JimpleTextDocumentService) textDocumentService).shutdown();
+    scheduler.shutdown();
     logger.cleanUp();
     MagpieServer.ExceptionLogger.cleanUp();
   }
 
   List<WorkspaceFolder> workspaceFolders = Collections.emptyList();
 
+  // written in initialized(), read by the requests
+  @Nonnull
+  private volatile CompletableFuture<Void> workspaceIndexing =
+      CompletableFuture.completedFuture(null);
+  @Nullable private volatile WorkspaceIndexer workspaceIndexer;
+  private boolean clientSupportsWorkDoneProgress = false;
+
   @Override
   public CompletableFuture<InitializeResult> initialize(InitializeParams params) {
     if (params.getWorkspaceFolders() != null) {
       workspaceFolders = params.getWorkspaceFolders();
     }
+    clientSupportsWorkDoneProgress =
+        params.getCapabilities() != null
+            && params.getCapabilities().getWindow() != null
+            && Boolean.TRUE.equals(params.getCapabilities().getWindow().getWorkDoneProgress());
 
     final CompletableFuture<InitializeResult> initialize = super.initialize(params);
     try {
       final ServerCapabilities capabilities = initialize.get().getCapabilities();
+      // documents are kept in sync via incremental changes
+      final Either<TextDocumentSyncKind, TextDocumentSyncOptions> textDocumentSync =
+          capabilities.getTextDocumentSync();
+      if (textDocumentSync != null && textDocumentSync.isRight()) {
+        textDocumentSync.getRight().setChange(TextDocumentSyncKind.Incremental);
+      } else {
+        capabilities.setTextDocumentSync(TextDocumentSyncKind.Incremental);
+      }
       capabilities.setWorkspaceSymbolProvider(true);
       capabilities.setDocumentSymbolProvider(true);
 
       capabilities.setImplementationProvider(true);
+      capabilities.setTypeHierarchyProvider(true);
       capabilities.setTypeDefinitionProvider(true);
       capabilities.setDefinitionProvider(true);
       capabilities.setReferencesProvider(true);
@@ -159,7 +349,12 @@ public class JimpleLspServer extends MagpieServer {
       capabilities.setDocumentHighlightProvider(true);
 
       // semantic token config
-      capabilities.setSemanticTokensProvider(new SemanticTokensWithRegistrationOptions(((JimpleTextDocumentService) getTextDocumentService()).tokenLegend, true));
+      // full (incl. delta) and range requests are supported
+      capabilities.setSemanticTokensProvider(
+          new SemanticTokensWithRegistrationOptions(
+              ((JimpleTextDocumentService) getTextDocumentService()).tokenLegend,
+              new SemanticTokensServerFull(true),
+              true));
 
       capabilities.setFoldingRangeProvider(false);
       // check: capabilities.setDocumentFormattingProvider(true);
@@ -176,9 +371,6 @@ public class JimpleLspServer extends MagpieServer {
   public void initialized(InitializedParams params) {
     super.initialized(params);
 
-    long startNanos = System.nanoTime();
-    // scan workspace all jimple files <-> classes
-    // hint: its expensive - maybe do it asynchrounous?
     List<Path> rootpaths = new ArrayList<>(workspaceFolders.size() + 1);
     rootPath.ifPresent(rootpaths::add);
 
@@ -191,21 +383,10 @@ public class JimpleLspServer extends MagpieServer {
             rootpaths.add(path);
           }
         });
-    List<Path> apkFiles = new ArrayList<>();
-    List<Path> jimpleFiles = new ArrayList<>();
-
-    // scan all workspaces in depth for jimple files
-    for (Path rootpath : rootpaths) {
-      // jimple
-      try (Stream<Path> paths = Files.walk(rootpath)) {
-        paths.filter(f -> f.toString().endsWith(".jimple")).forEach(jimpleFiles::add);
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-    }
 
     // TODO: nice2have: implement asking to extract jimple from an apk with old soot
     /* find apk in top levels/first level subdir
+    List<Path> apkFiles = new ArrayList<>();
     if(jimpleFiles.isEmpty()){
       for (Path rootpath : rootpaths) {
         // find apk
@@ -218,35 +399,77 @@ public class JimpleLspServer extends MagpieServer {
     }
     */
 
-    for (Path jimpleFile : jimpleFiles) {
-      try {
-        final String uri = Util.pathToUri(jimpleFile);
-        quarantineInputOrUpdate(uri);
-      } catch (IOException exception) {
-        exception.printStackTrace();
-      }
+    // scan the workspace for all jimple files <-> classes in the background - the indexed classes
+    // are published in batches, so requests regarding them are served while the indexing runs
+    final WorkspaceIndexer indexer = new WorkspaceIndexer(this, getIndexSnapshotFile(rootpaths));
+    workspaceIndexer = indexer;
+    final IndexingProgress progress =
+        new IndexingProgress(clientSupportsWorkDoneProgress ? client : null);
+    workspaceIndexing =
+        pool(
+            Priority.BACKGROUND,
+            () -> {
+              progress.begin();
+              try {
+                indexer.index(rootpaths, progress);
+              } finally {
+                // reports the runtime of the indexing
+                progress.end();
+              }
+              return null;
+            });
+  }
+
+  /**
+   * @return the location of the persisted index of the given workspace or null if the persistence
+   *     is disabled. Workspaces whose rootpaths have the same hash share the file - the snapshot
+   *     stores its rootpaths, so it is not used for another workspace.
+   */
+  @Nullable
+  private static Path getIndexSnapshotFile(@Nonnull List<Path> rootpaths) {
+    final String indexDir =
+        System.getProperty(
+            INDEX_DIR_PROPERTY,
+            Paths.get(System.getProperty("user.home"), ".jimplelsp").toString());
+    if (indexDir.isEmpty()) {
+      return null;
     }
+    return Paths.get(
+        indexDir, "index-" + Integer.toHexString(rootpaths.toString().hashCode()) + ".bin");
+  }
 
-    double runtimeMs = (System.nanoTime() - startNanos) / 1e6;
-    // TODO: channel to info log if necessary: System.out.println("Workspace indexing took " +
-    // runtimeMs + " ms");
+  /** @return the Future of the (initial) workspace indexing which is started in initialized() */
+  @Nonnull
+  public CompletableFuture<Void> getWorkspaceIndexing() {
+    return workspaceIndexing;
+  }
+
+  /**
+   * @return the jimple files of the workspace whose references are not in the ReferenceIndex yet -
+   *     empty once the workspace indexing is done
+   */
+  @Nonnull
+  List<Path> getUnindexedFiles() {
+    final WorkspaceIndexer indexer = workspaceIndexer;
+    if (indexer == null || workspaceIndexing.isDone()) {
+      return Collections.emptyList();
+    }
+    final List<Path> unindexedFiles = new ArrayList<>();
+    for (Path jimpleFile : indexer.getJimpleFiles()) {
+      if (!referenceIndex.contains(Util.pathToUri(jimpleFile))) {
+        unindexedFiles.add(jimpleFile);
+      }
+    }
+    return unindexedFiles;
   }
 
   @Nullable
   public ClassType docIdentifierToClassType(@Nonnull String textDocument) {
-    final SootClassSource sootClassSource = textDocumentClassMapping.get(textDocument);
-    if (sootClassSource == null) {
-      return null;
-    }
-    return sootClassSource.getClassType();
+    return uriToClasstype(textDocument);
   }
 
   @Nullable
   public ClassType uriToClasstype(@Nonnull String strUri) {
-    final SootClassSource scs = textDocumentClassMapping.get(strUri);
-    if (scs == null) {
-      return null;
-    }
-    return scs.getClassType();
+    return workspace.getClassType(strUri);
   }
 }
@@ -1,7 +1,5 @@
 package magpiebridge.jimplelsp;
 
-import de.upb.swt.soot.callgraph.typehierarchy.ViewTypeHierarchy;
-import de.upb.swt.soot.core.frontend.AbstractClassSource;
 import de.upb.swt.soot.core.model.*;
 import de.upb.swt.soot.core.signatures.FieldSignature;
 import de.upb.swt.soot.core.signatures.MethodSignature;
@@ -9,10 +7,17 @@ import de.upb.swt.soot.core.signatures.Signature;
 import de.upb.swt.soot.core.types.ClassType;
 import de.upb.swt.soot.core.types.Type;
 import de.upb.swt.soot.core.util.printer.Printer;
-import de.upb.swt.soot.core.views.View;
 import magpiebridge.core.MagpieServer;
 import magpiebridge.core.MagpieTextDocumentService;
+import magpiebridge.jimplelsp.RequestScheduler.Priority;
+import magpiebridge.jimplelsp.document.ChangeCoalescer;
+import magpiebridge.jimplelsp.document.DocumentBuffer;
+import magpiebridge.jimplelsp.document.DocumentCache;
+import magpiebridge.jimplelsp.document.ParsedDocument;
+import magpiebridge.jimplelsp.index.SymbolIndex;
+import magpiebridge.jimplelsp.index.TypeHierarchyIndex;
 import magpiebridge.jimplelsp.provider.JimpleSymbolProvider;
+import magpiebridge.jimplelsp.provider.JimpleTypeHierarchyProvider;
 import magpiebridge.jimplelsp.resolver.LocalPositionResolver;
 import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
 import org.apache.commons.lang3.tuple.Pair;
@@ -25,20 +30,46 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  * @author Markus Schmidt
  */
 public class JimpleTextDocumentService extends MagpieTextDocumentService {
-  private final Map<String, SignaturePositionResolver> docSignaturePositionResolver =
-          new HashMap<>();
+  // hint: version of a document which is not open (i.e. read from disk)
+  private static final int DISK_VERSION = -1;
+  // time without further changes after which a changed document is analyzed
+  private static final long CHANGE_DELAY_MILLIS = Long.getLong("jimplelsp.didChange.delay", 300);
+  // bounds for the cached ParsedDocuments of closed documents (open ones are always kept)
+  private static final int MAX_CLOSED_DOCUMENTS =
+      Integer.getInteger("jimplelsp.documentCache.size", 256);
+  private static final long MAX_CLOSED_DOCUMENTS_CHARS =
+      Long.getLong("jimplelsp.documentCache.maxChars", 64L * 1024 * 1024);
+
+  // hint: notifications modify these while requests read them in the pool
+  private final DocumentCache<ParsedDocument> parsedDocuments =
+      new DocumentCache<>(
+          MAX_CLOSED_DOCUMENTS, MAX_CLOSED_DOCUMENTS_CHARS, ParsedDocument::getTextLength);
+  private final Map<String, DocumentBuffer> openDocuments = new ConcurrentHashMap<>();
+  // the last version per open document which is not valid jimple - it is not parsed again
+  private final Map<String, Integer> invalidVersions = new ConcurrentHashMap<>();
+  // the semantic tokens which were sent last per uri - the base for delta requests
+  private final Map<String, SemanticTokens> sentSemanticTokens = new ConcurrentHashMap<>();
 
   public final SemanticTokensLegend tokenLegend = SyntaxHighlightingProvider.createLegend();
 
+  // analyses of a document run one after another and only for its latest version - in their own
+  // Priority class, so the indexing of the workspace can not hold them back
+  @Nonnull private final ChangeCoalescer analyses;
+  // searches references in the files which are not indexed yet
+  @Nonnull private final ReferenceScanner referenceScanner;
+
   /**
    * Instantiates a new magpie text document service.
    *
@@ -46,6 +77,11 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
    */
   public JimpleTextDocumentService(@Nonnull MagpieServer server) {
     super(server);
+    analyses =
+        new ChangeCoalescer(
+            task -> getServer().getScheduler().execute(Priority.ANALYSIS, task));
+    referenceScanner =
+        new ReferenceScanner(getServer().getScheduler().getForkJoinPool(Priority.BULK));
   }
 
   @Nonnull
@@ -70,7 +106,11 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
       return;
     }
 
-    analyzeFile(uri, text);
+    final int version = params.getTextDocument().getVersion();
+    openDocuments.put(uri, new DocumentBuffer(uri, version, text));
+    invalidVersions.remove(uri);
+    parsedDocuments.pin(uri);
+    analyses.submit(uri, 0, () -> analyzeFile(uri, version, text));
   }
 
   @Override
@@ -89,7 +129,9 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
       return;
     }
     // update classes
-    analyzeFile(uri, text);
+    final DocumentBuffer document = openDocuments.get(uri);
+    final int version = document != null ? document.getVersion() : DISK_VERSION;
+    analyses.submit(uri, 0, () -> analyzeFile(uri, version, text));
   }
 
   @Override
@@ -98,30 +140,95 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
     //    super.didClose(params);
     if (params == null
         || params.getTextDocument() == null
-        || params.getTextDocument().getUri() == null) {}
+        || params.getTextDocument().getUri() == null) {
+      return;
+    }
+    final String uri = params.getTextDocument().getUri();
+    if (openDocuments.remove(uri) == null) {
+      return;
+    }
+    parsedDocuments.unpin(uri);
+    invalidVersions.remove(uri);
+    sentSemanticTokens.remove(uri);
+    // unsaved modifications are discarded by the client: the file on disk is the truth again
+    final Path path = Util.uriToPath(uri);
+    analyses.submit(
+        uri,
+        0,
+        () -> {
+          if (Files.exists(path)) {
+            try {
+              analyzeFile(
+                  uri, DISK_VERSION, new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            } catch (IOException exception) {
+              exception.printStackTrace();
+            }
+          }
+        });
   }
 
   @Override
   public void didChange(DidChangeTextDocumentParams params) {
-    super.didChange(params);
-    /* TODO: test & allow modifications
+    // hint: we maintain our own DocumentBuffer so we don't call super.didChange(params)
+    if (params == null || params.getTextDocument() == null || params.getContentChanges() == null) {
+      return;
+    }
     final String uri = params.getTextDocument().getUri();
-    String language = inferLanguage(uri);
-    SourceFileManager fileManager = server.getSourceFileManager(language);
-    analyzeFile(params.getTextDocument().getUri(), fileManager.getVersionedFiles().get(uri).getText());
-    */
+    if (uri == null) {
+      return;
+    }
+    final DocumentBuffer document = openDocuments.get(uri);
+    if (document == null) {
+      return;
+    }
+    final Integer version = params.getTextDocument().getVersion();
+    document.applyChanges(
+        version != null ? version : document.getVersion() + 1, params.getContentChanges());
+    // analyze once the typing settled - versions superseded in the meantime are never parsed
+    analyses.submit(uri, CHANGE_DELAY_MILLIS, () -> analyzeOpenDocument(uri, document));
   }
 
-  private void analyzeFile(@Nonnull String uri, @Nonnull String text) {
+  private void analyzeOpenDocument(@Nonnull String uri, @Nonnull DocumentBuffer document) {
+    if (openDocuments.get(uri) != document) {
+      // closed (or reopened) in the meantime
+      return;
+    }
+    final int version;
+    final String text;
+    synchronized (document) {
+      version = document.getVersion();
+      text = document.getText();
+    }
+    analyzeFile(uri, version, text);
+  }
+
+  private void analyzeFile(@Nonnull String uri, int version, @Nonnull String text) {
     final boolean valid = getServer().quarantineInputOrUpdate(uri, text);
     if (valid) {
-      // calculate and cache interesting i.e.signature positions of the opened file
-      docSignaturePositionResolver.put(
-          uri, new SignaturePositionResolver(Util.uriToPath(uri), text));
+      // parse once and cache everything that is derived from the parse tree of this version
+      ParsedDocument parsedDocument = parsedDocuments.get(uri);
+      if (parsedDocument == null
+          || version == DISK_VERSION
+          || parsedDocument.getVersion() != version) {
+        parsedDocument = new ParsedDocument(uri, version, text, tokenLegend);
+        parsedDocuments.put(uri, parsedDocument);
+      } // else: a request parsed this version already
+
+      getServer()
+          .getReferenceIndex()
+          .update(uri, parsedDocument.getSignaturePositionResolver());
+      final Map<Signature, Range> declarations =
+          SymbolIndex.collectDeclarations(parsedDocument.getSignaturePositionResolver());
+      getServer().getSymbolIndex().update(uri, declarations);
+      getServer().getMethodOverrideIndex().update(uri, declarations);
     }
   }
 
 
+  void shutdown() {
+    analyses.shutdown();
+  }
+
   /*
   @Override
   public CompletableFuture<Either<List<? extends Location>, List<? extends LocationLink>>>
@@ -153,23 +260,11 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
               final Pair<Signature, Range> sigInst = resolver.resolve(position.getPosition());
               if (sigInst == null) {
                 // try whether its a Local (which has no Signature!)
-
-                final ClassType classType = getServer().uriToClasstype(uri);
-                if (classType == null) {
+                final LocalPositionResolver localPositionResolver = getLocalPositionResolver(uri);
+                if (localPositionResolver == null) {
                   return null;
                 }
-
-                final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                    getServer().getView().getClass(classType);
-                if (!aClass.isPresent()) {
-                  return null;
-                }
-                SootClass sc = (SootClass) aClass.get();
-
-                // maybe: cache instance for this file like for sigs
-                final LocalPositionResolver localPositionResolver =
-                    new LocalPositionResolver(Util.uriToPath(uri));
-                return localPositionResolver.resolveDefinition(sc, position);
+                return localPositionResolver.resolveDefinition(position);
               }
               Signature sig = sigInst.getLeft();
               if (sig != null) {
@@ -183,18 +278,17 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
   @Nullable
   private Location getDefinitionLocation(SignaturePositionResolver resolver, Signature sig) {
     if (sig instanceof ClassType) {
-      final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-          getServer().getView().getClass((ClassType) sig);
+      final Optional<SootClass> aClass = getServer().getSootClass((ClassType) sig);
       if (aClass.isPresent()) {
-        SootClass sc = (SootClass) aClass.get();
+        SootClass sc = aClass.get();
         return resolver.findFirstMatchingSignature(sc.getType(), sc.getPosition());
       }
 
     } else if (sig instanceof MethodSignature) {
-      final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-          getServer().getView().getClass(((MethodSignature) sig).getDeclClassType());
+      final Optional<SootClass> aClass =
+          getServer().getSootClass(((MethodSignature) sig).getDeclClassType());
       if (aClass.isPresent()) {
-        SootClass sc = (SootClass) aClass.get();
+        SootClass sc = aClass.get();
         final Optional<SootMethod> methodOpt = sc.getMethod(((MethodSignature) sig));
         if (methodOpt.isPresent()) {
           final SootMethod method = methodOpt.get();
@@ -203,10 +297,10 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
       }
 
     } else if (sig instanceof FieldSignature) {
-      final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-          getServer().getView().getClass(((FieldSignature) sig).getDeclClassType());
+      final Optional<SootClass> aClass =
+          getServer().getSootClass(((FieldSignature) sig).getDeclClassType());
       if (aClass.isPresent()) {
-        SootClass sc = (SootClass) aClass.get();
+        SootClass sc = aClass.get();
         final Optional<SootField> field = sc.getField(((FieldSignature) sig).getSubSignature());
         if (field.isPresent()) {
           final SootField sf = field.get();
@@ -227,7 +321,8 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
     // subclasses/overriding methods there
     return getServer()
         .pool(
-            () -> {
+            Priority.BULK,
+            cancelChecker -> {
               List<Location> list = new ArrayList<>();
 
               final String uri = position.getTextDocument().getUri();
@@ -242,45 +337,39 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
               }
               Signature sig = sigInstance.getLeft();
 
-              final View view = getServer().getView();
-              final ViewTypeHierarchy typeHierarchy = new ViewTypeHierarchy(view);
+              cancelChecker.checkCanceled();
+              final TypeHierarchyIndex typeHierarchy = getServer().getTypeHierarchyIndex();
 
               if (sig instanceof ClassType) {
-                final Set<ClassType> subClassTypes = typeHierarchy.subtypesOf((ClassType) sig);
+                final Set<ClassType> subClassTypes =
+                    typeHierarchy.getSubtypes((ClassType) sig, cancelChecker);
 
+                // hint: the indices know where the subtypes are declared - no need to convert them
                 subClassTypes.forEach(
                     subClassSig -> {
-                      Optional<SootClass> scOpt = (Optional<SootClass>) view.getClass(subClassSig);
-                      scOpt.ifPresent(
-                          sootClass ->
-                              list.add(
-                                  Util.positionToDefLocation(
-                                      Util.pathToUri(sootClass.getClassSource().getSourcePath()),
-                                      sootClass.getPosition())));
+                      cancelChecker.checkCanceled();
+                      final String subClassUri = typeHierarchy.getUri(subClassSig);
+                      if (subClassUri == null) {
+                        return;
+                      }
+                      final Range declaration =
+                          getServer()
+                              .getSymbolIndex()
+                              .getClassDeclaration(subClassUri, subClassSig);
+                      list.add(
+                          new Location(
+                              subClassUri,
+                              declaration != null
+                                  ? declaration
+                                  : new Range(new Position(0, 0), new Position(0, 0))));
                     });
 
                 return Either.forLeft(list);
               } else if (sig instanceof MethodSignature) {
-                final Set<ClassType> classTypes =
-                    typeHierarchy.subtypesOf(((MethodSignature) sig).getDeclClassType());
-                classTypes.forEach(
-                    csig -> {
-                      Optional<SootClass> scOpt = (Optional<SootClass>) view.getClass(csig);
-                      if (scOpt.isPresent()) {
-                        final SootClass sc = scOpt.get();
-                        final Optional<SootMethod> methodOpt =
-                            sc.getMethod(((MethodSignature) sig).getSubSignature());
-                        final String methodsClassUri =
-                            Util.pathToUri(sc.getClassSource().getSourcePath());
-                        methodOpt.ifPresent(
-                            method -> {
-                              list.add(
-                                  Util.positionToDefLocation(
-                                      methodsClassUri, method.getPosition()));
-                            });
-                      }
-                    });
-
+                list.addAll(
+                    getServer()
+                        .getMethodOverrideIndex()
+                        .getOverriders((MethodSignature) sig, cancelChecker));
                 return Either.forLeft(list);
               }
 
@@ -288,6 +377,63 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
             });
   }
 
+  @Override
+  public CompletableFuture<TypeHierarchyItem> typeHierarchy(TypeHierarchyParams params) {
+    if (params == null) {
+      return null;
+    }
+    return getServer()
+        .pool(
+            cancelChecker -> {
+              final SignaturePositionResolver resolver =
+                  getSignaturePositionResolver(params.getTextDocument().getUri());
+              if (resolver == null) {
+                return null;
+              }
+              final Pair<Signature, Range> sigInstance = resolver.resolve(params.getPosition());
+              if (sigInstance == null) {
+                return null;
+              }
+              final Signature sig = sigInstance.getLeft();
+              final ClassType classType;
+              if (sig instanceof ClassType) {
+                classType = (ClassType) sig;
+              } else if (sig instanceof MethodSignature) {
+                classType = ((MethodSignature) sig).getDeclClassType();
+              } else if (sig instanceof FieldSignature) {
+                classType = ((FieldSignature) sig).getDeclClassType();
+              } else {
+                return null;
+              }
+              return getTypeHierarchyProvider()
+                  .createItem(
+                      classType, params.getResolve(), params.getDirection(), cancelChecker);
+            });
+  }
+
+  @Override
+  public CompletableFuture<TypeHierarchyItem> resolveTypeHierarchy(
+      ResolveTypeHierarchyItemParams params) {
+    if (params == null || params.getItem() == null) {
+      return null;
+    }
+    return getServer()
+        .pool(
+            cancelChecker ->
+                getTypeHierarchyProvider()
+                    .resolve(
+                        params.getItem(),
+                        params.getResolve(),
+                        params.getDirection(),
+                        cancelChecker));
+  }
+
+  @Nonnull
+  private JimpleTypeHierarchyProvider getTypeHierarchyProvider() {
+    return new JimpleTypeHierarchyProvider(
+        getServer().getTypeHierarchyIndex(), getServer().getSymbolIndex());
+  }
+
   @Override
   public CompletableFuture<List<? extends Location>> references(ReferenceParams params) {
     if (params == null) {
@@ -296,7 +442,8 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
     // find usages of FieldSignaturesy|MethodSignatures|Classtypes
     return getServer()
         .pool(
-            () -> {
+            Priority.BULK,
+            cancelChecker -> {
               List<Location> list = new ArrayList<>();
               final String uri = params.getTextDocument().getUri();
               final SignaturePositionResolver resolver = getSignaturePositionResolver(uri);
@@ -307,23 +454,12 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
 
               if (sigInstance == null) {
                 // maybe its a Local?
-
-                final ClassType classType = getServer().uriToClasstype(uri);
-                if (classType == null) {
+                final LocalPositionResolver localPositionResolver = getLocalPositionResolver(uri);
+                if (localPositionResolver == null) {
                   return null;
                 }
-                final View view = getServer().getView();
-                final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                    view.getClass(classType);
-                if (aClass.isPresent()) {
-                  SootClass sc = (SootClass) aClass.get();
-                  final LocalPositionResolver localPositionResolver =
-                      new LocalPositionResolver(Util.uriToPath(uri));
-                  list.addAll(localPositionResolver.resolveReferences(sc, params));
-                  return list;
-                }
-
-                return null;
+                list.addAll(localPositionResolver.resolveReferences(params));
+                return list;
               }
               Signature sig = sigInstance.getLeft();
 
@@ -332,53 +468,103 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
               final Location definitionLocation =
                   includeDef ? null : getDefinitionLocation(resolver, sig);
 
-              final Collection<SootClass> classes =
-                  (Collection<SootClass>) getServer().getView().getClasses();
-              for (SootClass sc : classes) {
-                final Path scPath = sc.getClassSource().getSourcePath();
-                final SignaturePositionResolver sigresolver = getSignaturePositionResolver(scPath);
-
-                final List<Location> resolvedList = sigresolver.resolve(sig);
-
-                // remove definition if requested
-                if (!includeDef) {
-                  resolvedList.removeIf(loc -> loc.equals(definitionLocation));
-                }
-                list.addAll(resolvedList);
+              cancelChecker.checkCanceled();
+              // while the workspace is indexed: scan the files which are not in the index yet
+              final List<Path> unindexedFiles = getServer().getUnindexedFiles();
+              // hint: a file could be indexed during the scan i.e. found twice
+              final Set<Location> locations =
+                  new LinkedHashSet<>(
+                      getServer().getReferenceIndex().getReferences(sig, cancelChecker));
+              locations.addAll(referenceScanner.scan(unindexedFiles, sig, cancelChecker));
+              list.addAll(locations);
+              // remove definition if requested
+              if (!includeDef) {
+                list.removeIf(loc -> loc.equals(definitionLocation));
               }
-
               return list;
             });
   }
 
   @Nullable
-  private SignaturePositionResolver getSignaturePositionResolver(Path path) {
-    return getSignaturePositionResolver(path, Util.pathToUri(path));
+  public SignaturePositionResolver getSignaturePositionResolver(@Nonnull String uri) {
+    final ParsedDocument parsedDocument = getParsedDocument(uri);
+    return parsedDocument == null ? null : parsedDocument.getSignaturePositionResolver();
   }
 
   @Nullable
-  public SignaturePositionResolver getSignaturePositionResolver(@Nonnull String uri) {
-    return getSignaturePositionResolver(Util.uriToPath(uri), uri);
+  public LocalPositionResolver getLocalPositionResolver(@Nonnull String uri) {
+    final ParsedDocument parsedDocument = getParsedDocument(uri);
+    return parsedDocument == null ? null : parsedDocument.getLocalPositionResolver();
   }
 
+  /**
+   * @return the ParsedDocument of the current version of the given uri - i.e. of the in-memory
+   *     text if the document is open, otherwise of the file on disk.
+   */
   @Nullable
-  private SignaturePositionResolver getSignaturePositionResolver(
-      @Nonnull Path path, @Nonnull String uri) {
-    final SignaturePositionResolver sigresolver =
-        docSignaturePositionResolver.computeIfAbsent(
+  private ParsedDocument getParsedDocument(@Nonnull String uri) {
+    final DocumentBuffer document = openDocuments.get(uri);
+    if (document != null) {
+      final ParsedDocument parsedDocument = parsedDocuments.get(uri);
+      final int version;
+      final String text;
+      synchronized (document) {
+        version = document.getVersion();
+        if (parsedDocument != null && parsedDocument.getVersion() == version) {
+          return parsedDocument;
+        }
+        text = document.getText();
+      }
+      if (parsedDocument != null && analyses.isPending(uri)) {
+        // the user is still typing: serve the last good state instead of parsing every keystroke
+        return parsedDocument;
+      }
+      final Integer invalidVersion = invalidVersions.get(uri);
+      if (invalidVersion != null && invalidVersion == version) {
+        // parsing this version failed already: serve what we know from the last valid version
+        return parsedDocument;
+      }
+      // the cached one is outdated e.g. the analysis of the latest version failed
+      try {
+        final ParsedDocument reparsedDocument =
+            new ParsedDocument(uri, version, text, tokenLegend);
+        // don't replace a newer one or one of a document which was closed in the meantime
+        parsedDocuments.compute(
             uri,
-            k -> {
-              try {
-                return new SignaturePositionResolver(path);
-              } catch (IllegalStateException ex) {
-                System.out.println(path);
-                ex.printStackTrace();
-              } catch (IOException exception) {
-                exception.printStackTrace();
-              }
-              return null;
-            });
-    return sigresolver;
+            (k, current) ->
+                openDocuments.get(uri) == document
+                        && (current == null || current.getVersion() < version)
+                    ? reparsedDocument
+                    : current);
+        return reparsedDocument;
+      } catch (IllegalStateException ex) {
+        // invalid jimple: serve what we know from the last valid version
+        if (openDocuments.get(uri) == document) {
+          invalidVersions.put(uri, version);
+        }
+        return parsedDocument;
+      }
+    }
+
+    // hint: closed documents may have been evicted - they are parsed from disk again
+    return parsedDocuments.getOrLoad(
+        uri,
+        k -> {
+          final Path path = Util.uriToPath(uri);
+          try {
+            return new ParsedDocument(
+                uri,
+                DISK_VERSION,
+                new String(Files.readAllBytes(path), StandardCharsets.UTF_8),
+                tokenLegend);
+          } catch (IllegalStateException ex) {
+            System.err.println("Could not parse " + path);
+            ex.printStackTrace();
+          } catch (IOException exception) {
+            exception.printStackTrace();
+          }
+          return null;
+        });
   }
 
   @Override
@@ -400,29 +586,17 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
               final Pair<Signature, Range> sigInst = resolver.resolve(position.getPosition());
               if (sigInst == null) {
                 // try whether its a Local (which has no Signature!)
-                final ClassType classType = getServer().uriToClasstype(uri);
-                if (classType == null) {
-                  return null;
-                }
-
-                final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                    getServer().getView().getClass(classType);
-                if (!aClass.isPresent()) {
+                final LocalPositionResolver localPositionResolver = getLocalPositionResolver(uri);
+                if (localPositionResolver == null) {
                   return null;
                 }
-                SootClass sc = (SootClass) aClass.get();
-
-                // maybe: cache instance for this file like for sigs
-                final LocalPositionResolver localPositionResolver =
-                    new LocalPositionResolver(Util.uriToPath(uri));
                 final Type type =
-                    localPositionResolver.resolveTypeDefinition(sc, position.getPosition());
+                    localPositionResolver.resolveTypeDefinition(position.getPosition());
 
                 if (!(type instanceof ClassType)) {
                   return null;
                 }
-                final Optional<SootClass> typeClass =
-                    (Optional<SootClass>) getServer().getView().getClass((ClassType) type);
+                final Optional<SootClass> typeClass = getServer().getSootClass((ClassType) type);
                 if (typeClass.isPresent()) {
                   final SootClass sootClass = typeClass.get();
                   return Util.positionToLocationList(
@@ -440,10 +614,9 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
                 if (!(type instanceof ClassType)) {
                   return null;
                 }
-                final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                    getServer().getView().getClass((ClassType) type);
+                final Optional<SootClass> aClass = getServer().getSootClass((ClassType) type);
                 if (aClass.isPresent()) {
-                  SootClass sc = (SootClass) aClass.get();
+                  SootClass sc = aClass.get();
                   final Optional<SootMethod> method = sc.getMethod(((MethodSignature) sig));
                   if (method.isPresent()) {
                     return Util.positionToLocationList(
@@ -457,10 +630,9 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
                 if (!(type instanceof ClassType)) {
                   return null;
                 }
-                final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                    getServer().getView().getClass((ClassType) type);
+                final Optional<SootClass> aClass = getServer().getSootClass((ClassType) type);
                 if (aClass.isPresent()) {
-                  SootClass sc = (SootClass) aClass.get();
+                  SootClass sc = aClass.get();
                   final Optional<SootField> field =
                       sc.getField(((FieldSignature) sig).getSubSignature());
                   if (field.isPresent()) {
@@ -498,10 +670,9 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
 
               String str = null;
               if (sig instanceof ClassType) {
-                final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                    getServer().getView().getClass((ClassType) sig);
+                final Optional<SootClass> aClass = getServer().getSootClass((ClassType) sig);
                 if (aClass.isPresent()) {
-                  SootClass sc = (SootClass) aClass.get();
+                  SootClass sc = aClass.get();
                   str = Modifier.toString(sc.getModifiers()) + " " + sc.toString();
                   final Optional<ClassType> superclass = sc.getSuperclass();
                   if (superclass.isPresent()) {
@@ -517,10 +688,10 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
                   }
                 }
               } else if (sig instanceof MethodSignature) {
-                final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                    getServer().getView().getClass(((MethodSignature) sig).getDeclClassType());
+                final Optional<SootClass> aClass =
+                    getServer().getSootClass(((MethodSignature) sig).getDeclClassType());
                 if (aClass.isPresent()) {
-                  SootClass sc = (SootClass) aClass.get();
+                  SootClass sc = aClass.get();
                   final Optional<SootMethod> aMethod =
                       sc.getMethod(((MethodSignature) sig).getSubSignature());
                   if (aMethod.isPresent()) {
@@ -530,10 +701,10 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
                   }
                 }
               } else if (sig instanceof FieldSignature) {
-                final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                    getServer().getView().getClass(((FieldSignature) sig).getDeclClassType());
+                final Optional<SootClass> aClass =
+                    getServer().getSootClass(((FieldSignature) sig).getDeclClassType());
                 if (aClass.isPresent()) {
-                  SootClass sc = (SootClass) aClass.get();
+                  SootClass sc = aClass.get();
                   final Optional<SootField> aField =
                       sc.getField(((FieldSignature) sig).getSubSignature());
                   if (aField.isPresent()) {
@@ -563,23 +734,13 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
         .pool(
             () -> {
               final String uri = position.getTextDocument().getUri();
-              final LocalPositionResolver resolver = new LocalPositionResolver(Util.uriToPath(uri));
-
-              final ClassType classType = getServer().uriToClasstype(uri);
-              if (classType == null) {
+              final LocalPositionResolver resolver = getLocalPositionResolver(uri);
+              if (resolver == null) {
                 return null;
               }
-              final View view = getServer().getView();
-              final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                  view.getClass(classType);
-              if (aClass.isPresent()) {
-                SootClass sc = (SootClass) aClass.get();
-                return resolver.resolveReferences(sc, position).stream()
-                    .map(ref -> new DocumentHighlight(ref.getRange(), DocumentHighlightKind.Text))
-                    .collect(Collectors.toList());
-              }
-
-              return null;
+              return resolver.resolveReferences(position).stream()
+                  .map(ref -> new DocumentHighlight(ref.getRange(), DocumentHighlightKind.Text))
+                  .collect(Collectors.toList());
             });
   }
 
@@ -605,11 +766,9 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
               if (classType == null) {
                 return null;
               }
-              final View view = getServer().getView();
-              final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                  view.getClass(classType);
+              final Optional<SootClass> aClass = getServer().getSootClass(classType);
               if (aClass.isPresent()) {
-                SootClass sc = (SootClass) aClass.get();
+                SootClass sc = aClass.get();
 
                 final StringWriter out = new StringWriter();
                 PrintWriter writer = new PrintWriter(out);
@@ -644,10 +803,9 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
               if (classType == null) {
                 return null;
               }
-              final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                  getServer().getView().getClass(classType);
+              final Optional<SootClass> aClass = getServer().getSootClass(classType);
               if (aClass.isPresent()) {
-                SootClass sc = (SootClass) aClass.get();
+                SootClass sc = aClass.get();
                 List<FoldingRange> frList = new ArrayList<>();
                 sc.getMethods()
                     .forEach(
@@ -700,13 +858,12 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
                       if (classType == null) {
                         return null;
                       }
-                      final Optional<? extends AbstractClass<? extends AbstractClassSource>> aClass =
-                              getServer().getView().getClass(classType);
+                      final Optional<SootClass> aClass = getServer().getSootClass(classType);
                       if (!aClass.isPresent()) {
                         return null;
                       }
 
-                      SootClass sc = (SootClass) aClass.get();
+                      SootClass sc = aClass.get();
                       List<SymbolInformation> list = new ArrayList<>();
                       int limit = Integer.MAX_VALUE;
                       JimpleSymbolProvider.retrieveAndFilterSymbolsFromClass(
@@ -722,8 +879,28 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
   @Override
   public CompletableFuture<SemanticTokens> semanticTokensFull(SemanticTokensParams params) {
     return getServer().pool(() -> {
-      final SyntaxHighlightingProvider syntaxHighlightingProvider = new SyntaxHighlightingProvider(tokenLegend);
+      final TextDocumentIdentifier textDocument = params.getTextDocument();
+      if (textDocument == null) {
+        return null;
+      }
+      final String uri = textDocument.getUri();
+      if (uri == null) {
+        return null;
+      }
+      final ParsedDocument parsedDocument = getParsedDocument(uri);
+      if (parsedDocument == null) {
+        return null;
+      }
+      final SemanticTokens semanticTokens = parsedDocument.getSemanticTokens();
+      sentSemanticTokens.put(uri, semanticTokens);
+      return semanticTokens;
+    });
+  }
 
+  @Override
+  public CompletableFuture<Either<SemanticTokens, SemanticTokensDelta>> semanticTokensFullDelta(
+      SemanticTokensDeltaParams params) {
+    return getServer().pool(() -> {
       final TextDocumentIdentifier textDocument = params.getTextDocument();
       if (textDocument == null) {
         return null;
@@ -732,7 +909,42 @@ public class JimpleTextDocumentService extends MagpieTextDocumentService {
       if (uri == null) {
         return null;
       }
-      return syntaxHighlightingProvider.paintbrush(uri);
+      final ParsedDocument parsedDocument = getParsedDocument(uri);
+      if (parsedDocument == null) {
+        return null;
+      }
+      final SemanticTokens semanticTokens = parsedDocument.getSemanticTokens();
+      final SemanticTokens previousTokens = sentSemanticTokens.put(uri, semanticTokens);
+      if (previousTokens == null
+          || !previousTokens.getResultId().equals(params.getPreviousResultId())) {
+        // we don't know the tokens the client refers to
+        return Either.forLeft(semanticTokens);
+      }
+      return Either.forRight(
+          new SemanticTokensDelta(
+              SemanticTokenManager.diff(previousTokens.getData(), semanticTokens.getData()),
+              semanticTokens.getResultId()));
+    });
+  }
+
+  @Override
+  public CompletableFuture<SemanticTokens> semanticTokensRange(SemanticTokensRangeParams params) {
+    return getServer().pool(() -> {
+      final TextDocumentIdentifier textDocument = params.getTextDocument();
+      if (textDocument == null || params.getRange() == null) {
+        return null;
+      }
+      final String uri = textDocument.getUri();
+      if (uri == null) {
+        return null;
+      }
+      final ParsedDocument parsedDocument = getParsedDocument(uri);
+      if (parsedDocument == null) {
+        return null;
+      }
+      return new SemanticTokens(
+          SemanticTokenManager.range(
+              parsedDocument.getSemanticTokens().getData(), params.getRange()));
     });
   }
 
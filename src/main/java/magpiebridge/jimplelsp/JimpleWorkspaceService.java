@@ -1,13 +1,11 @@
 package magpiebridge.jimplelsp;
 
-import de.upb.swt.soot.core.model.SootClass;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import magpiebridge.core.MagpieServer;
 import magpiebridge.core.MagpieWorkspaceService;
-import magpiebridge.jimplelsp.provider.JimpleSymbolProvider;
-import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
+import magpiebridge.jimplelsp.RequestScheduler.Priority;
 import org.eclipse.lsp4j.*;
 
 /** @author Markus Schmidt */
@@ -24,46 +22,29 @@ public class JimpleWorkspaceService extends MagpieWorkspaceService {
   public CompletableFuture<List<? extends SymbolInformation>> symbol(WorkspaceSymbolParams params) {
     return getServer()
         .pool(
-            () -> {
+            Priority.BULK,
+            cancelChecker -> {
               int limit = 32;
-              List<SymbolInformation> list = new ArrayList<>(limit);
-
-              final String query = params.getQuery().trim().toLowerCase();
 
+              final String query = params.getQuery().trim();
               // start searching if the query has sth relevant/"enough" input for searching
-              if (query.length() >= 2) {
-                getServer()
-                    .getView()
-                    .getClasses()
-                    .forEach(
-                        clazz -> {
-                          if (list.size() >= limit) {
-                            return;
-                          }
-
-                          final SymbolCapabilities workspaceSymbol =
-                              getServer().getClientCapabilities().getWorkspace().getSymbol();
-                          if (workspaceSymbol == null) {
-                            return;
-                          }
-                          final SymbolKindCapabilities symbolKind = workspaceSymbol.getSymbolKind();
-                          if (symbolKind == null) {
-                            return;
-                          }
+              if (query.length() < 2) {
+                return Collections.emptyList();
+              }
 
-                          final SignaturePositionResolver signaturePositionResolver =
-                              ((JimpleTextDocumentService) getServer().getTextDocumentService())
-                                  .getSignaturePositionResolver(Util.classToUri((SootClass) clazz));
-                          JimpleSymbolProvider.retrieveAndFilterSymbolsFromClass(
-                              list,
-                              query,
-                              (SootClass) clazz,
-                              signaturePositionResolver,
-                              symbolKind,
-                              limit);
-                        });
+              final SymbolCapabilities workspaceSymbol =
+                  getServer().getClientCapabilities().getWorkspace().getSymbol();
+              if (workspaceSymbol == null) {
+                return Collections.emptyList();
               }
-              return list;
+              final SymbolKindCapabilities symbolKind = workspaceSymbol.getSymbolKind();
+              if (symbolKind == null) {
+                return Collections.emptyList();
+              }
+
+              return getServer()
+                  .getSymbolIndex()
+                  .search(query, limit, symbolKind.getValueSet(), cancelChecker);
             });
   }
 }
@@ -0,0 +1,327 @@
+package magpiebridge.jimplelsp;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The PersistentMap is an immutable hash map (a hash array mapped trie). plus/minus return a new
+ * map which shares all unchanged nodes with the previous one, so an update copies only the path to
+ * the changed entry - O(log32 n) - instead of the whole map. Snapshots of the workspace and the
+ * postings of the SymbolIndex are published this way.
+ *
+ * <p>Neither null keys nor null values are supported.
+ */
+public final class PersistentMap<K, V> {
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+  @Nullable private final Node root;
+  private final int size;
+
+  private PersistentMap(@Nullable Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nonnull
+  public static <K, V> PersistentMap<K, V> empty() {
+    return (PersistentMap<K, V>) EMPTY;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable
+  public V get(@Nonnull Object key) {
+    return root == null ? null : (V) root.get(0, key.hashCode(), key);
+  }
+
+  public boolean containsKey(@Nonnull Object key) {
+    return get(key) != null;
+  }
+
+  /** @return a map which additionally maps the key to the value - or this if it does already */
+  @Nonnull
+  public PersistentMap<K, V> plus(@Nonnull K key, @Nonnull V value) {
+    final boolean[] added = new boolean[1];
+    final int hash = key.hashCode();
+    final Node newRoot =
+        root == null
+            ? BitmapNode.EMPTY.put(0, hash, key, value, added)
+            : root.put(0, hash, key, value, added);
+    if (newRoot == root) {
+      return this;
+    }
+    return new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+  }
+
+  /** @return a map without the key - or this if it is not contained */
+  @Nonnull
+  public PersistentMap<K, V> minus(@Nonnull Object key) {
+    if (root == null) {
+      return this;
+    }
+    final Node newRoot = root.remove(0, key.hashCode(), key);
+    if (newRoot == root) {
+      return this;
+    }
+    return newRoot == null ? empty() : new PersistentMap<>(newRoot, size - 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  public void forEach(@Nonnull BiConsumer<? super K, ? super V> consumer) {
+    if (root != null) {
+      root.forEach((BiConsumer<Object, Object>) consumer);
+    }
+  }
+
+  private abstract static class Node {
+    @Nullable
+    abstract Object get(int shift, int hash, @Nonnull Object key);
+
+    /** @return the node with the entry or this if the key is already mapped to the value */
+    @Nonnull
+    abstract Node put(
+        int shift, int hash, @Nonnull Object key, @Nonnull Object value, boolean[] added);
+
+    /** @return the node without the key, null if it is empty then or this if it is not contained */
+    @Nullable
+    abstract Node remove(int shift, int hash, @Nonnull Object key);
+
+    abstract void forEach(@Nonnull BiConsumer<Object, Object> consumer);
+  }
+
+  /**
+   * A node with up to 32 slots - one per 5 bits of the hash at its level. The bitmap marks the used
+   * slots which are stored compressed: array[2i] holds the key and array[2i+1] its value, or
+   * array[2i] is null and array[2i+1] is the child node of that slot.
+   */
+  private static final class BitmapNode extends Node {
+    private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    private final int bitmap;
+    @Nonnull private final Object[] array;
+
+    private BitmapNode(int bitmap, @Nonnull Object[] array) {
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    private static int bit(int shift, int hash) {
+      return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Nullable
+    @Override
+    Object get(int shift, int hash, @Nonnull Object key) {
+      final int bit = bit(shift, hash);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      final int idx = index(bit);
+      final Object k = array[2 * idx];
+      final Object v = array[2 * idx + 1];
+      if (k == null) {
+        return ((Node) v).get(shift + BITS, hash, key);
+      }
+      return key.equals(k) ? v : null;
+    }
+
+    @Nonnull
+    @Override
+    Node put(int shift, int hash, @Nonnull Object key, @Nonnull Object value, boolean[] added) {
+      final int bit = bit(shift, hash);
+      final int idx = index(bit);
+      if ((bitmap & bit) == 0) {
+        final Object[] newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, 2 * idx);
+        newArray[2 * idx] = key;
+        newArray[2 * idx + 1] = value;
+        System.arraycopy(array, 2 * idx, newArray, 2 * idx + 2, array.length - 2 * idx);
+        added[0] = true;
+        return new BitmapNode(bitmap | bit, newArray);
+      }
+
+      final Object k = array[2 * idx];
+      final Object v = array[2 * idx + 1];
+      if (k == null) {
+        final Node child = ((Node) v).put(shift + BITS, hash, key, value, added);
+        return child == v ? this : with(2 * idx + 1, child);
+      }
+      if (key.equals(k)) {
+        return value == v ? this : with(2 * idx + 1, value);
+      }
+      // two keys in the same slot: push both into a child node
+      added[0] = true;
+      final Node child = createNode(shift + BITS, k, v, hash, key, value);
+      final Object[] newArray = array.clone();
+      newArray[2 * idx] = null;
+      newArray[2 * idx + 1] = child;
+      return new BitmapNode(bitmap, newArray);
+    }
+
+    @Nonnull
+    private BitmapNode with(int arrayIdx, @Nonnull Object value) {
+      final Object[] newArray = array.clone();
+      newArray[arrayIdx] = value;
+      return new BitmapNode(bitmap, newArray);
+    }
+
+    @Nonnull
+    private static Node createNode(
+        int shift,
+        @Nonnull Object key1,
+        @Nonnull Object value1,
+        int hash2,
+        @Nonnull Object key2,
+        @Nonnull Object value2) {
+      final int hash1 = key1.hashCode();
+      if (hash1 == hash2) {
+        return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+      }
+      // hint: the hashes differ, so they differ in the bits of some level below
+      final boolean[] added = new boolean[1];
+      return EMPTY
+          .put(shift, hash1, key1, value1, added)
+          .put(shift, hash2, key2, value2, added);
+    }
+
+    @Nullable
+    @Override
+    Node remove(int shift, int hash, @Nonnull Object key) {
+      final int bit = bit(shift, hash);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      final int idx = index(bit);
+      final Object k = array[2 * idx];
+      final Object v = array[2 * idx + 1];
+      if (k == null) {
+        final Node child = ((Node) v).remove(shift + BITS, hash, key);
+        if (child == v) {
+          return this;
+        }
+        return child == null ? without(bit, idx) : with(2 * idx + 1, child);
+      }
+      return key.equals(k) ? without(bit, idx) : this;
+    }
+
+    @Nullable
+    private BitmapNode without(int bit, int idx) {
+      if (bitmap == bit) {
+        return null;
+      }
+      final Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, 2 * idx);
+      System.arraycopy(array, 2 * idx + 2, newArray, 2 * idx, newArray.length - 2 * idx);
+      return new BitmapNode(bitmap ^ bit, newArray);
+    }
+
+    @Override
+    void forEach(@Nonnull BiConsumer<Object, Object> consumer) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (array[i] == null) {
+          ((Node) array[i + 1]).forEach(consumer);
+        } else {
+          consumer.accept(array[i], array[i + 1]);
+        }
+      }
+    }
+  }
+
+  /** The entries of keys with the same hash: array[2i] holds a key and array[2i+1] its value. */
+  private static final class CollisionNode extends Node {
+    private final int hash;
+    @Nonnull private final Object[] array;
+
+    private CollisionNode(int hash, @Nonnull Object[] array) {
+      this.hash = hash;
+      this.array = array;
+    }
+
+    private int indexOf(@Nonnull Object key) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Nullable
+    @Override
+    Object get(int shift, int hash, @Nonnull Object key) {
+      if (hash != this.hash) {
+        return null;
+      }
+      final int idx = indexOf(key);
+      return idx < 0 ? null : array[idx + 1];
+    }
+
+    @Nonnull
+    @Override
+    Node put(int shift, int hash, @Nonnull Object key, @Nonnull Object value, boolean[] added) {
+      if (hash != this.hash) {
+        // nest this node into a BitmapNode which distinguishes the hashes
+        final BitmapNode parent =
+            new BitmapNode(BitmapNode.bit(shift, this.hash), new Object[] {null, this});
+        return parent.put(shift, hash, key, value, added);
+      }
+      final int idx = indexOf(key);
+      if (idx >= 0) {
+        if (array[idx + 1] == value) {
+          return this;
+        }
+        final Object[] newArray = array.clone();
+        newArray[idx + 1] = value;
+        return new CollisionNode(hash, newArray);
+      }
+      added[0] = true;
+      final Object[] newArray = Arrays.copyOf(array, array.length + 2);
+      newArray[array.length] = key;
+      newArray[array.length + 1] = value;
+      return new CollisionNode(hash, newArray);
+    }
+
+    @Nullable
+    @Override
+    Node remove(int shift, int hash, @Nonnull Object key) {
+      if (hash != this.hash) {
+        return this;
+      }
+      final int idx = indexOf(key);
+      if (idx < 0) {
+        return this;
+      }
+      if (array.length == 2) {
+        return null;
+      }
+      final Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, idx);
+      System.arraycopy(array, idx + 2, newArray, idx, newArray.length - idx);
+      return new CollisionNode(hash, newArray);
+    }
+
+    @Override
+    void forEach(@Nonnull BiConsumer<Object, Object> consumer) {
+      for (int i = 0; i < array.length; i += 2) {
+        consumer.accept(array[i], array[i + 1]);
+      }
+    }
+  }
+}
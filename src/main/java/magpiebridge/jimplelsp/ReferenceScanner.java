@@ -0,0 +1,106 @@
+package magpiebridge.jimplelsp;
+
+import de.upb.swt.soot.core.frontend.ResolveException;
+import de.upb.swt.soot.core.signatures.Signature;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+/**
+ * The ReferenceScanner searches the occurences of a Signature in files whose references are not
+ * in the ReferenceIndex yet (i.e. while the workspace is indexed). The files are parsed in the
+ * tasks of a ForkJoinPool and the occurences of each file are collected as soon as it is done.
+ */
+class ReferenceScanner {
+  // amount of files that are scanned by a single task without splitting it further
+  private static final int SCAN_BATCH_SIZE = 4;
+
+  @Nonnull private final ForkJoinPool pool;
+
+  ReferenceScanner(@Nonnull ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * @param cancelChecker is checked per file
+   * @return the Locations of all occurences of the given Signature in the given files
+   */
+  @Nonnull
+  List<Location> scan(
+      @Nonnull List<Path> files,
+      @Nonnull Signature signature,
+      @Nullable CancelChecker cancelChecker) {
+    if (files.isEmpty()) {
+      return new ArrayList<>();
+    }
+    final Collection<Location> locations = new ConcurrentLinkedQueue<>();
+    RequestScheduler.invoke(
+        pool, new ScanTask(files, 0, files.size(), signature, cancelChecker, locations));
+    return new ArrayList<>(locations);
+  }
+
+  /** scans the files in [from, to) - splits itself until the range is small */
+  private static final class ScanTask extends RecursiveAction {
+    @Nonnull private final List<Path> files;
+    private final int from;
+    private final int to;
+    @Nonnull private final Signature signature;
+    @Nullable private final CancelChecker cancelChecker;
+    @Nonnull private final Collection<Location> locations;
+
+    private ScanTask(
+        @Nonnull List<Path> files,
+        int from,
+        int to,
+        @Nonnull Signature signature,
+        @Nullable CancelChecker cancelChecker,
+        @Nonnull Collection<Location> locations) {
+      this.files = files;
+      this.from = from;
+      this.to = to;
+      this.signature = signature;
+      this.cancelChecker = cancelChecker;
+      this.locations = locations;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > SCAN_BATCH_SIZE) {
+        final int mid = (from + to) >>> 1;
+        invokeAll(
+            new ScanTask(files, from, mid, signature, cancelChecker, locations),
+            new ScanTask(files, mid, to, signature, cancelChecker, locations));
+        return;
+      }
+
+      for (int i = from; i < to; i++) {
+        // hint: CancellationException is an IllegalStateException - check outside of the try
+        if (cancelChecker != null) {
+          cancelChecker.checkCanceled();
+        }
+        final Path jimpleFile = files.get(i);
+        try {
+          final List<Location> fileLocations =
+              new SignaturePositionResolver(jimpleFile).resolve(signature);
+          if (fileLocations != null) {
+            locations.addAll(fileLocations);
+          }
+        } catch (IllegalStateException | ResolveException e) {
+          // invalid jimple: the file has no (resolvable) occurences
+        } catch (IOException exception) {
+          exception.printStackTrace();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package magpiebridge.jimplelsp;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The RequestScheduler runs the work of the server in separate executors per Priority, so that
+ * background work (e.g. indexing the workspace) can not delay the interactive requests of the user
+ * - each class has its own worker threads and its own bounded queue.
+ *
+ * <p>All classes share one thread budget (by default the amount of processors): each class gets a
+ * fixed share of it, so background work can not occupy the cores of the other classes - thread
+ * priorities alone are ignored by the scheduler of e.g. Linux. The workers of a class form a
+ * ForkJoinPool which runs divisible work of that class as well, so it doesn't need threads beyond
+ * the budget either.
+ *
+ * <p>The budget can be configured via the system property <code>jimplelsp.scheduler.threads
+ * </code>, the concurrency and queue size of each class via <code>
+ * jimplelsp.scheduler.&lt;priority&gt;.threads</code> and <code>
+ * jimplelsp.scheduler.&lt;priority&gt;.queue</code> e.g. <code>
+ * -Djimplelsp.scheduler.background.threads=2</code>.
+ *
+ * <p>With <code>-Djimplelsp.virtualThreads=true</code> requests run on virtual threads if the JVM
+ * supports them: a request which blocks on I/O then doesn't occupy a worker, the amount of requests
+ * in flight per class is bounded by threads + queue size. On older JVMs the platform thread pools
+ * are used.
+ */
+public class RequestScheduler {
+  public static final String VIRTUAL_THREADS_PROPERTY = "jimplelsp.virtualThreads";
+  public static final String THREAD_BUDGET_PROPERTY = "jimplelsp.scheduler.threads";
+
+  /** The priority classes of the work - in descending order. */
+  public enum Priority {
+    /** requests the user waits for while working in the editor e.g. hover, definition. */
+    INTERACTIVE(4, 256, Thread.NORM_PRIORITY),
+    /** requests which query the whole workspace e.g. references, workspace symbols. */
+    BULK(4, 64, Thread.NORM_PRIORITY - 1),
+    /**
+     * analyses of the documents the user edits e.g. diagnostics - apart from BACKGROUND, so they
+     * don't wait until the workspace is indexed.
+     */
+    ANALYSIS(4, 256, Thread.NORM_PRIORITY - 1),
+    /** work nobody actively waits for e.g. indexing the workspace. */
+    BACKGROUND(2, 1024, Thread.MIN_PRIORITY);
+
+    // the default share of the thread budget is 1/budgetDivisor
+    private final int budgetDivisor;
+    private final int defaultQueueSize;
+    private final int threadPriority;
+
+    Priority(int budgetDivisor, int defaultQueueSize, int threadPriority) {
+      this.budgetDivisor = budgetDivisor;
+      this.defaultQueueSize = defaultQueueSize;
+      this.threadPriority = threadPriority;
+    }
+
+    @Override
+    public String toString() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  @Nonnull
+  private final Map<Priority, ExecutorService> executors = new EnumMap<>(Priority.class);
+  // the platform workers of each class - they run the requests unless virtual threads are used
+  @Nonnull
+  private final Map<Priority, ForkJoinPool> forkJoinPools = new EnumMap<>(Priority.class);
+  // limits the requests in flight per class: workers + queue size
+  @Nonnull private final Map<Priority, Semaphore> admissions = new EnumMap<>(Priority.class);
+  @Nonnull private final Map<Priority, Integer> concurrency = new EnumMap<>(Priority.class);
+
+  public RequestScheduler() {
+    this(Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY));
+  }
+
+  public RequestScheduler(boolean useVirtualThreads) {
+    final int budget =
+        Math.max(
+            1,
+            Integer.getInteger(
+                THREAD_BUDGET_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    for (Priority priority : Priority.values()) {
+      final int threads =
+          Math.max(
+              1,
+              Integer.getInteger(
+                  "jimplelsp.scheduler." + priority + ".threads",
+                  getDefaultThreads(priority, budget)));
+      final int queueSize =
+          Math.max(
+              1,
+              Integer.getInteger(
+                  "jimplelsp.scheduler." + priority + ".queue", priority.defaultQueueSize));
+      concurrency.put(priority, threads);
+      admissions.put(priority, new Semaphore(threads + queueSize));
+
+      final ForkJoinPool forkJoinPool = createForkJoinPool(priority, threads);
+      forkJoinPools.put(priority, forkJoinPool);
+      // background work is cpu bound and runs with a lower thread priority: it stays on platform
+      // threads
+      final ExecutorService virtualThreads =
+          useVirtualThreads && priority != Priority.BACKGROUND
+              ? newVirtualThreadExecutor()
+              : null;
+      executors.put(priority, virtualThreads != null ? virtualThreads : forkJoinPool);
+    }
+  }
+
+  /**
+   * @return the default share of the given budget: INTERACTIVE, BULK and ANALYSIS get a quarter
+   *     each, BACKGROUND the rest
+   */
+  private static int getDefaultThreads(@Nonnull Priority priority, int budget) {
+    if (priority != Priority.BACKGROUND) {
+      return Math.max(1, budget / priority.budgetDivisor);
+    }
+    int rest = budget;
+    for (Priority other : Priority.values()) {
+      if (other != Priority.BACKGROUND) {
+        rest -= Math.max(1, budget / other.budgetDivisor);
+      }
+    }
+    return Math.max(1, rest);
+  }
+
+  /** idle workers are not kept alive - ForkJoinPools release them after a short while. */
+  @Nonnull
+  private static ForkJoinPool createForkJoinPool(@Nonnull Priority priority, int threads) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    return new ForkJoinPool(
+        threads,
+        pool -> {
+          final ForkJoinWorkerThread thread =
+              ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+          thread.setName("jimplelsp-" + priority + "-" + threadCount.incrementAndGet());
+          thread.setPriority(priority.threadPriority);
+          return thread;
+        },
+        null,
+        false);
+  }
+
+  /**
+   * creates an ExecutorService which starts a virtual thread per task via reflection - the server
+   * is compiled for (and runs on) Java 8 as well.
+   *
+   * @return the ExecutorService or null if the JVM does not support virtual threads
+   */
+  @Nullable
+  public static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // e.g. NoSuchMethodException before Java 19 or UnsupportedOperationException if virtual
+      // threads are a disabled preview feature
+      return null;
+    }
+  }
+
+  /**
+   * @return the ExecutorService which dispatches the incoming JSON-RPC messages of a connection:
+   *     virtual threads if enabled and supported, a cached thread pool otherwise.
+   */
+  @Nonnull
+  public static ExecutorService newDispatchExecutor() {
+    if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+      final ExecutorService virtualThreads = newVirtualThreadExecutor();
+      if (virtualThreads != null) {
+        return virtualThreads;
+      }
+    }
+    return Executors.newCachedThreadPool();
+  }
+
+  /**
+   * queues the task in the executor of the given Priority.
+   *
+   * @throws RejectedExecutionException if the queue of that Priority is full
+   */
+  public void execute(@Nonnull Priority priority, @Nonnull Runnable task) {
+    final Semaphore admission = admissions.get(priority);
+    if (!admission.tryAcquire()) {
+      throw new RejectedExecutionException("too many " + priority + " requests in flight");
+    }
+    try {
+      executors
+          .get(priority)
+          .execute(
+              () -> {
+                try {
+                  task.run();
+                } finally {
+                  admission.release();
+                }
+              });
+    } catch (RejectedExecutionException e) {
+      admission.release();
+      throw e;
+    }
+  }
+
+  /** @return whether the work of the given Priority runs on virtual threads */
+  public boolean isVirtual(@Nonnull Priority priority) {
+    return executors.get(priority) != forkJoinPools.get(priority);
+  }
+
+  /** @return the configured amount of worker threads of the given Priority */
+  public int getConcurrency(@Nonnull Priority priority) {
+    return concurrency.get(priority);
+  }
+
+  /**
+   * @return the ForkJoinPool for divisible work of the given Priority - it consists of the workers
+   *     of that Priority, so the work stays within its share of the thread budget. Don't shut it
+   *     down.
+   */
+  @Nonnull
+  public ForkJoinPool getForkJoinPool(@Nonnull Priority priority) {
+    return forkJoinPools.get(priority);
+  }
+
+  /**
+   * runs the task in the given pool and waits for its result. If the caller is a worker of that
+   * pool (e.g. a request which splits its work) it computes the task itself instead of blocking
+   * while the other workers do it.
+   */
+  public static <T> T invoke(@Nonnull ForkJoinPool pool, @Nonnull ForkJoinTask<T> task) {
+    final Thread thread = Thread.currentThread();
+    if (thread instanceof ForkJoinWorkerThread
+        && ((ForkJoinWorkerThread) thread).getPool() == pool) {
+      return task.invoke();
+    }
+    return pool.invoke(task);
+  }
+
+  public void shutdown() {
+    executors.values().forEach(ExecutorService::shutdownNow);
+    forkJoinPools.values().forEach(ExecutorService::shutdownNow);
+  }
+}
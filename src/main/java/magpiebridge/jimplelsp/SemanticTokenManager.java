@@ -1,62 +1,179 @@
 package magpiebridge.jimplelsp;
 
 
-import org.eclipse.lsp4j.SemanticTokenModifiers;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SemanticTokensEdit;
 import org.eclipse.lsp4j.SemanticTokensLegend;
 
 import javax.annotation.Nonnull;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.RandomAccess;
 
 /**
+ * Encodes the painted tokens into the relative int format of the LSP. The legend indices of the
+ * token types and modifiers are looked up once in the constructor, painting a token just appends
+ * five ints to a growable array.
+ *
  * @author Markus Schmidt
  */
 public class SemanticTokenManager {
+  private static final int INTS_PER_TOKEN = 5;
+
   @Nonnull
   private final SemanticTokensLegend legend;
+  // SemanticTokenTypeEnum.ordinal() -> index in the legend
+  @Nonnull
+  private final int[] tokenTypeIdx;
+  // SemanticTokenModifierEnum.ordinal() -> bit of the legend index (0 if its not in the legend)
+  @Nonnull
+  private final int[] tokenModifierBit;
 
   @Nonnull
-  final List<Integer> encodedSemanticTokens = new ArrayList<>();
+  private int[] encodedSemanticTokens = new int[INTS_PER_TOKEN * 256];
+  private int size = 0;
   int lastTokenLine, lastTokenColumn = 0;
 
   public SemanticTokenManager(SemanticTokensLegend legend) {
     this.legend = legend;
+
+    final SemanticTokenTypeEnum[] tokenTypes = SemanticTokenTypeEnum.values();
+    tokenTypeIdx = new int[tokenTypes.length];
+    for (SemanticTokenTypeEnum type : tokenTypes) {
+      tokenTypeIdx[type.ordinal()] = Math.max(legend.getTokenTypes().indexOf(type.toString()), 0);
+    }
+
+    final SemanticTokenModifierEnum[] tokenModifiers = SemanticTokenModifierEnum.values();
+    tokenModifierBit = new int[tokenModifiers.length];
+    for (SemanticTokenModifierEnum modifier : tokenModifiers) {
+      final int idx = legend.getTokenModifiers().indexOf(modifier.toString());
+      tokenModifierBit[modifier.ordinal()] = idx < 0 ? 0 : 1 << idx;
+    }
+  }
+
+  public void paintText(SemanticTokenTypeEnum type, int line, int col, int length) {
+    paintText(type, 0, line, col, length);
   }
 
-  public void paintText(SemanticTokenTypeEnum type, SemanticTokenModifiers mod, int line, int col, int length) {
+  /** @param modifiers bitset of SemanticTokenModifierEnum.bit()s */
+  public void paintText(SemanticTokenTypeEnum type, int modifiers, int line, int col, int length) {
+    if (size + INTS_PER_TOKEN > encodedSemanticTokens.length) {
+      encodedSemanticTokens = Arrays.copyOf(encodedSemanticTokens, encodedSemanticTokens.length * 2);
+    }
+    final int[] data = encodedSemanticTokens;
+
     //    at index 5*i - deltaLine: token line number, relative to the previous token
-    encodedSemanticTokens.add(line - lastTokenLine);
+    data[size] = line - lastTokenLine;
 
     //    at index 5*i+1 - deltaStart: token start character, relative to the previous token (relative to 0 or the previous token’s start if they are on the same line)
-    if (line == lastTokenLine) {
-      encodedSemanticTokens.add(col - lastTokenColumn);
-    } else {
-      encodedSemanticTokens.add(col);
-    }
+    data[size + 1] = line == lastTokenLine ? col - lastTokenColumn : col;
 
     //    at index 5*i+2 - length: the length of the token.
-    encodedSemanticTokens.add(length);
+    data[size + 2] = length;
 
     //    at index 5*i+3 - tokenType: will be looked up in SemanticTokensLegend.tokenTypes. We currently ask that tokenType < 65536.
-    final int typeIdx = legend.getTokenTypes().indexOf(type.toString());  // TODO [ms] performance
-    encodedSemanticTokens.add(Math.max(typeIdx, 0));
+    data[size + 3] = tokenTypeIdx[type.ordinal()];
 
     //    at index 5*i+4 - tokenModifiers: each set bit will be looked up in SemanticTokensLegend.tokenModifiers
-    encodedSemanticTokens.add(Math.max(legend.getTokenModifiers().indexOf(mod), 0)); // TODO performance
+    int legendModifiers = 0;
+    for (int bits = modifiers; bits != 0; bits &= bits - 1) {
+      legendModifiers |= tokenModifierBit[Integer.numberOfTrailingZeros(bits)];
+    }
+    data[size + 4] = legendModifiers;
 
+    size += INTS_PER_TOKEN;
     lastTokenLine = line;
     lastTokenColumn = col;
   }
 
+  /** @return the encoded tokens painted so far as List view - no copy. */
   public List<Integer> getCanvas() {
-    return encodedSemanticTokens;
+    return new EncodedTokens(encodedSemanticTokens, size);
   }
 
   public SemanticTokensLegend getLegend() {
     return legend;
   }
 
+  /**
+   * calculates the edit which transforms the previous encoded tokens into the current ones. As the
+   * tokens are encoded relative to their predecessor, an edit in the document usually changes only
+   * a small window of the encoded data - everything before and after is shared.
+   *
+   * @return the (single) edit or an empty list if both are equal
+   */
+  @Nonnull
+  public static List<SemanticTokensEdit> diff(
+      @Nonnull List<Integer> previous, @Nonnull List<Integer> current) {
+    final int maxCommon = Math.min(previous.size(), current.size());
+    int prefix = 0;
+    while (prefix < maxCommon && previous.get(prefix).intValue() == current.get(prefix)) {
+      prefix++;
+    }
+    if (prefix == previous.size() && prefix == current.size()) {
+      return Collections.emptyList();
+    }
+
+    int suffix = 0;
+    while (suffix < maxCommon - prefix
+        && previous.get(previous.size() - 1 - suffix).intValue()
+            == current.get(current.size() - 1 - suffix)) {
+      suffix++;
+    }
+
+    return Collections.singletonList(
+        new SemanticTokensEdit(
+            prefix,
+            previous.size() - prefix - suffix,
+            new ArrayList<>(current.subList(prefix, current.size() - suffix))));
+  }
+
+  /**
+   * @return the encoded tokens which intersect with the given range - encoded relative to the
+   *     document start again
+   */
+  @Nonnull
+  public static List<Integer> range(@Nonnull List<Integer> encodedTokens, @Nonnull Range range) {
+    final Position start = range.getStart();
+    final Position end = range.getEnd();
+    final int[] tokensInRange = new int[encodedTokens.size()];
+    int count = 0;
+
+    int line = 0;
+    int col = 0;
+    int lastLine = 0;
+    int lastCol = 0;
+    for (int i = 0; i + INTS_PER_TOKEN <= encodedTokens.size(); i += INTS_PER_TOKEN) {
+      final int deltaLine = encodedTokens.get(i);
+      line += deltaLine;
+      col = deltaLine == 0 ? col + encodedTokens.get(i + 1) : encodedTokens.get(i + 1);
+      final int length = encodedTokens.get(i + 2);
+
+      if (line > end.getLine() || (line == end.getLine() && col >= end.getCharacter())) {
+        // tokens are sorted: nothing more to find
+        break;
+      }
+      if (line < start.getLine()
+          || (line == start.getLine() && col + length <= start.getCharacter())) {
+        continue;
+      }
+
+      tokensInRange[count] = line - lastLine;
+      tokensInRange[count + 1] = line == lastLine ? col - lastCol : col;
+      tokensInRange[count + 2] = length;
+      tokensInRange[count + 3] = encodedTokens.get(i + 3);
+      tokensInRange[count + 4] = encodedTokens.get(i + 4);
+      count += INTS_PER_TOKEN;
+      lastLine = line;
+      lastCol = col;
+    }
+    return new EncodedTokens(tokensInRange, count);
+  }
+
   @Override
   public String toString() {
     return "SemanticTokenManager{" +
@@ -69,13 +186,12 @@ public class SemanticTokenManager {
 
   public String humanReadableTokenList() {
     StringBuilder sb = new StringBuilder();
-    ListIterator<Integer> it = encodedSemanticTokens.listIterator();
-    while (it.hasNext()) {
-      int deltaLine = it.next();
-      int deltaCol = it.next();
-      int length = it.next();
-      int tokenTypeIdx = it.next();
-      int tokenModIdx = it.next();
+    for (int i = 0; i + INTS_PER_TOKEN <= size; i += INTS_PER_TOKEN) {
+      int deltaLine = encodedSemanticTokens[i];
+      int deltaCol = encodedSemanticTokens[i + 1];
+      int length = encodedSemanticTokens[i + 2];
+      int tokenTypeIdx = encodedSemanticTokens[i + 3];
+      int tokenModIdx = encodedSemanticTokens[i + 4];
 
       sb.append("token: ").append(legend.getTokenTypes().get(tokenTypeIdx));
       sb.append("\tmodifier: ").append(tokenModIdx);
@@ -87,6 +203,32 @@ public class SemanticTokenManager {
     return sb.toString();
   }
 
+  /**
+   * read-only List view on the encoded int array which is handed to lsp4j. The Integers are only
+   * created while serializing - and for the usual small values they are taken from the Integer
+   * cache.
+   */
+  private static final class EncodedTokens extends AbstractList<Integer> implements RandomAccess {
+    @Nonnull
+    private final int[] data;
+    private final int size;
+
+    private EncodedTokens(@Nonnull int[] data, int size) {
+      this.data = data;
+      this.size = size;
+    }
 
-}
+    @Override
+    public Integer get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("index " + index + " is out of bounds.");
+      }
+      return data[index];
+    }
 
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package magpiebridge.jimplelsp;
+
+enum SemanticTokenModifierEnum {
+  Declaration,
+  Definition,
+  Readonly,
+  Static,
+  Deprecated,
+  Abstract,
+  Async,
+  Modification,
+  Documentation,
+  DefaultLibrary;
+
+  private SemanticTokenModifierEnum() {
+  }
+
+  /** @return the bit of this modifier in a modifier bitset - combine multiple via '|' */
+  public int bit() {
+    return 1 << ordinal();
+  }
+
+  @Override
+  public String toString() {
+    String name = name();
+    return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  }
+}
@@ -3,6 +3,7 @@ package magpiebridge.jimplelsp;
 import de.upb.swt.soot.jimple.JimpleBaseListener;
 import de.upb.swt.soot.jimple.JimpleParser;
 import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
+import magpiebridge.jimplelsp.document.ParseTreeMultiplexer;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
@@ -33,6 +34,18 @@ public class SyntaxHighlightingProvider {
     semanticTokenManager = new SemanticTokenManager(legend);
   }
 
+  /** paints the tokens while the given (shared) walk over the parse tree runs. */
+  public SyntaxHighlightingProvider(
+      @Nonnull SemanticTokensLegend legend, @Nonnull ParseTreeMultiplexer walk) {
+    this(legend);
+    walk.add(new SyntaxHighlightingListener());
+  }
+
+  @Nonnull
+  public SemanticTokens getSemanticTokens() {
+    return new SemanticTokens(semanticTokenManager.getCanvas());
+  }
+
   @Nullable
   public SemanticTokens paintbrush(@Nonnull String uri) {
 
@@ -67,13 +80,13 @@ public class SyntaxHighlightingProvider {
     private void paint(SemanticTokenTypeEnum tokentype, Token token) {
       // TODO: add tokenModifier
       // zero offset line/column
-      semanticTokenManager.paintText(tokentype, null, token.getLine() - 1, token.getCharPositionInLine(), token.getText().length());
+      semanticTokenManager.paintText(tokentype, token.getLine() - 1, token.getCharPositionInLine(), token.getText().length());
     }
 
     private void paint(SemanticTokenTypeEnum tokentype, ParserRuleContext ctx) {
       // TODO: add tokenModifier
       // zero offset line/column
-      semanticTokenManager.paintText(tokentype, null, ctx.start.getLine() - 1, ctx.start.getCharPositionInLine(), ctx.getText().length());
+      semanticTokenManager.paintText(tokentype, ctx.start.getLine() - 1, ctx.start.getCharPositionInLine(), ctx.getText().length());
     }
 
 
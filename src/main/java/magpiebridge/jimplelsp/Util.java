@@ -1,5 +1,8 @@
 package magpiebridge.jimplelsp;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import de.upb.swt.soot.core.model.Position;
 import de.upb.swt.soot.core.model.SootClass;
 import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
@@ -18,6 +21,12 @@ import org.eclipse.lsp4j.jsonrpc.messages.Either;
 /** @author Markus Schmidt */
 public class Util {
 
+  // Path.toUri() is costly and creates a new String per call: share one instance per document
+  private static final LoadingCache<Path, String> uris =
+      CacheBuilder.newBuilder()
+          .maximumSize(Long.getLong("jimplelsp.uriCache.size", 100_000))
+          .build(CacheLoader.from(path -> path.toUri().toString()));
+
   @Nonnull
   public static String classToUri(@Nonnull SootClass clazz) {
     return pathToUri(clazz.getClassSource().getSourcePath());
@@ -25,7 +34,7 @@ public class Util {
 
   @Nonnull
   public static String pathToUri(@Nonnull Path sourcePath) {
-    return sourcePath.toUri().toString();
+    return uris.getUnchecked(sourcePath);
   }
 
   @Nonnull
@@ -46,10 +55,16 @@ public class Util {
   public static Range positionToDefRange(@Nonnull Position position) {
     // line numbers starting zero-based in LSP vs one-based in antlr
     // extract interesting part /beginning which usually is the signature of the current Range
+    return positionToDefRange(position.getFirstLine(), position.getFirstCol());
+  }
+
+  /** @return the range from the given start to the beginning of the next line */
+  @Nonnull
+  public static Range positionToDefRange(int firstLine, int firstCol) {
     return new Range(
-        new org.eclipse.lsp4j.Position(position.getFirstLine(), position.getFirstCol()),
+        new org.eclipse.lsp4j.Position(firstLine, firstCol),
         // to next line
-        new org.eclipse.lsp4j.Position(position.getFirstLine() + 1, 0));
+        new org.eclipse.lsp4j.Position(firstLine + 1, 0));
   }
 
   @Nonnull
@@ -0,0 +1,333 @@
+package magpiebridge.jimplelsp;
+
+import de.upb.swt.soot.core.frontend.ResolveException;
+import de.upb.swt.soot.core.frontend.SootClassSource;
+import de.upb.swt.soot.core.signatures.Signature;
+import de.upb.swt.soot.core.types.ClassType;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import magpiebridge.jimplelsp.index.IndexSnapshot;
+import magpiebridge.jimplelsp.index.ReferenceIndex;
+import magpiebridge.jimplelsp.index.SymbolIndex;
+import magpiebridge.jimplelsp.index.TypeHierarchyIndex;
+import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
+import org.antlr.v4.runtime.CharStreams;
+import org.eclipse.lsp4j.Range;
+
+/**
+ * The WorkspaceIndexer scans the workspace for jimple files and converts them into
+ * SootClassSources. Walking the directories as well as parsing/converting the files is divided
+ * into tasks of a ForkJoinPool, the results are merged into a single uri->SootClassSource mapping.
+ * The signature occurences of each file are added to the ReferenceIndex of the server, its
+ * declarations to the SymbolIndex.
+ *
+ * <p>The indexed classes are published to the server in batches while the indexing runs, so
+ * requests regarding already indexed files are answered before the whole workspace is indexed.
+ *
+ * <p>If an IndexSnapshot of a previous run exists, files which did not change since are not parsed
+ * again: their indexed information is restored from the snapshot and their SootClassSource is
+ * created on demand.
+ */
+class WorkspaceIndexer {
+  private static final String JIMPLE_SUFFIX = ".jimple";
+  // amount of files that are indexed by a single task without splitting it further
+  private static final int INDEXING_BATCH_SIZE = 16;
+  // minimum time between two publications of indexed classes to the server
+  private static final long PUBLISH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  @Nonnull private final JimpleLspServer server;
+  @Nonnull private final ForkJoinPool pool;
+  @Nullable private final Path snapshotFile;
+  // the jimple files of the workspace - known once the directories are scanned
+  @Nonnull private volatile List<Path> jimpleFiles = Collections.emptyList();
+  @Nonnull private final AtomicLong lastPublishNanos = new AtomicLong();
+
+  /** The merged result of the workspace indexing. */
+  static final class Result {
+    @Nonnull final Map<String, SootClassSource> classMapping = new ConcurrentHashMap<>();
+    // uri->ClassType of files which are restored from the snapshot
+    @Nonnull final Map<String, ClassType> restoredClassTypes = new ConcurrentHashMap<>();
+    // uris of the indexed files which are not published to the server yet
+    @Nonnull final Queue<String> unpublishedUris = new ConcurrentLinkedQueue<>();
+  }
+
+  /** indexes with the workers (i.e. within the thread budget) of the servers background work. */
+  WorkspaceIndexer(@Nonnull JimpleLspServer server, @Nullable Path snapshotFile) {
+    this.server = server;
+    this.snapshotFile = snapshotFile;
+    this.pool = server.getScheduler().getForkJoinPool(RequestScheduler.Priority.BACKGROUND);
+  }
+
+  /** @return the jimple files of the workspace or an empty list if they are not scanned yet */
+  @Nonnull
+  List<Path> getJimpleFiles() {
+    return jimpleFiles;
+  }
+
+  /**
+   * indexes all jimple files below the rootpaths, publishes the indexed classes to the server and
+   * updates the snapshot afterwards.
+   */
+  @Nonnull
+  Result index(@Nonnull List<Path> rootpaths, @Nonnull IndexingProgress progress) {
+    lastPublishNanos.set(System.nanoTime());
+    final List<Path> jimpleFiles = new ArrayList<>();
+    for (Path rootpath : rootpaths) {
+      jimpleFiles.addAll(RequestScheduler.invoke(pool, new DirectoryScanTask(rootpath)));
+    }
+    this.jimpleFiles = Collections.unmodifiableList(jimpleFiles);
+    progress.setTotalFiles(jimpleFiles.size());
+
+    final IndexSnapshot snapshot =
+        snapshotFile == null ? IndexSnapshot.EMPTY : IndexSnapshot.load(snapshotFile, rootpaths);
+    final Map<String, IndexSnapshot.Entry> entries = new ConcurrentHashMap<>();
+    final Result result = new Result();
+    RequestScheduler.invoke(
+        pool,
+        new IndexingTask(
+            jimpleFiles, 0, jimpleFiles.size(), snapshot, entries, result, progress));
+    publish(result);
+
+    if (snapshotFile != null) {
+      try {
+        IndexSnapshot.write(snapshotFile, rootpaths, entries.values());
+      } catch (IOException exception) {
+        exception.printStackTrace();
+      }
+    }
+    return result;
+  }
+
+  /** merges the classes which were indexed since the last publication into the server. */
+  private void publish(@Nonnull Result result) {
+    final Result batch = new Result();
+    String uri;
+    while ((uri = result.unpublishedUris.poll()) != null) {
+      final SootClassSource scs = result.classMapping.get(uri);
+      if (scs != null) {
+        batch.classMapping.put(uri, scs);
+      } else {
+        final ClassType classType = result.restoredClassTypes.get(uri);
+        if (classType != null) {
+          batch.restoredClassTypes.put(uri, classType);
+        }
+      }
+    }
+    if (!batch.classMapping.isEmpty() || !batch.restoredClassTypes.isEmpty()) {
+      server.updateAll(batch);
+    }
+  }
+
+  /** publishes at most every PUBLISH_INTERVAL_NANOS - batches the updates of the snapshot. */
+  private void publishIfDue(@Nonnull Result result) {
+    final long now = System.nanoTime();
+    final long lastPublish = lastPublishNanos.get();
+    if (now - lastPublish >= PUBLISH_INTERVAL_NANOS
+        && lastPublishNanos.compareAndSet(lastPublish, now)) {
+      publish(result);
+    }
+  }
+
+  private void indexFile(
+      @Nonnull Path jimpleFile,
+      @Nonnull IndexSnapshot snapshot,
+      @Nonnull Map<String, IndexSnapshot.Entry> entries,
+      @Nonnull Result result)
+      throws IOException {
+    final String uri = Util.pathToUri(jimpleFile);
+    final BasicFileAttributes attributes =
+        Files.readAttributes(jimpleFile, BasicFileAttributes.class);
+    final long size = attributes.size();
+    final long lastModified = attributes.lastModifiedTime().toMillis();
+
+    IndexSnapshot.Entry entry = snapshot.get(uri);
+    byte[] content = null;
+    if (entry != null && !entry.isUnchanged(size, lastModified)) {
+      // modified (or just touched?) since the snapshot was taken: compare the content
+      content = Files.readAllBytes(jimpleFile);
+      if (entry.getSize() == content.length && entry.getHash() == IndexSnapshot.hash(content)) {
+        entry =
+            new IndexSnapshot.Entry(
+                uri,
+                size,
+                lastModified,
+                entry.getHash(),
+                entry.getClassType(),
+                entry.getSuperclass(),
+                entry.getInterfaces(),
+                entry.getOccurences(),
+                entry.getDeclarations());
+      } else {
+        entry = null;
+      }
+    }
+
+    if (entry != null) {
+      // unchanged: no need to parse it
+      result.restoredClassTypes.put(uri, entry.getClassType());
+      result.unpublishedUris.add(uri);
+      server.getReferenceIndex().updateIfAbsent(uri, entry.getOccurences());
+      server.getSymbolIndex().updateIfAbsent(uri, entry.getDeclarations());
+      server.getMethodOverrideIndex().updateIfAbsent(uri, entry.getDeclarations());
+      server
+          .getTypeHierarchyIndex()
+          .updateIfAbsent(
+              uri,
+              entry.getClassType(),
+              new TypeHierarchyIndex.Supertypes(entry.getSuperclass(), entry.getInterfaces()));
+      entries.put(uri, entry);
+      return;
+    }
+
+    if (content == null) {
+      content = Files.readAllBytes(jimpleFile);
+    }
+    final String text = new String(content, StandardCharsets.UTF_8);
+    final SootClassSource scs = server.convert(uri, CharStreams.fromString(text));
+    if (scs == null) {
+      markUnindexable(uri);
+      return;
+    }
+    result.classMapping.put(uri, scs);
+    result.unpublishedUris.add(uri);
+
+    final SignaturePositionResolver resolver = new SignaturePositionResolver(jimpleFile, text);
+    final Map<Signature, List<Range>> occurences = ReferenceIndex.collectOccurences(resolver);
+    server.getReferenceIndex().updateIfAbsent(uri, occurences);
+    final Map<Signature, Range> declarations = SymbolIndex.collectDeclarations(resolver);
+    server.getSymbolIndex().updateIfAbsent(uri, declarations);
+    server.getMethodOverrideIndex().updateIfAbsent(uri, declarations);
+
+    final TypeHierarchyIndex.Supertypes supertypes = JimpleLspServer.supertypesOf(scs);
+    server.getTypeHierarchyIndex().updateIfAbsent(uri, scs.getClassType(), supertypes);
+
+    entries.put(
+        uri,
+        new IndexSnapshot.Entry(
+            uri,
+            size,
+            lastModified,
+            IndexSnapshot.hash(content),
+            scs.getClassType(),
+            supertypes.getSuperclass(),
+            new HashSet<>(supertypes.getInterfaces()),
+            occurences,
+            declarations));
+  }
+
+  /**
+   * marks a file which can not be parsed as indexed (without any occurences) - otherwise requests
+   * would scan it again and again until the indexing is done. Once the file is opened and fixed its
+   * occurences are updated.
+   */
+  private void markUnindexable(@Nonnull String uri) {
+    server.getReferenceIndex().updateIfAbsent(uri, Collections.emptyMap());
+  }
+
+  /** lists a directory and forks a subtask for each of its subdirectories */
+  private static final class DirectoryScanTask extends RecursiveTask<List<Path>> {
+    @Nonnull private final Path directory;
+
+    private DirectoryScanTask(@Nonnull Path directory) {
+      this.directory = directory;
+    }
+
+    @Override
+    protected List<Path> compute() {
+      if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+        return directory.toString().endsWith(JIMPLE_SUFFIX)
+            ? Collections.singletonList(directory)
+            : Collections.emptyList();
+      }
+
+      final List<Path> jimpleFiles = new ArrayList<>();
+      final List<DirectoryScanTask> subtasks = new ArrayList<>();
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+        for (Path entry : entries) {
+          if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+            final DirectoryScanTask subtask = new DirectoryScanTask(entry);
+            subtask.fork();
+            subtasks.add(subtask);
+          } else if (entry.toString().endsWith(JIMPLE_SUFFIX)) {
+            jimpleFiles.add(entry);
+          }
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+
+      for (DirectoryScanTask subtask : subtasks) {
+        jimpleFiles.addAll(subtask.join());
+      }
+      return jimpleFiles;
+    }
+  }
+
+  /** indexes the files in [from, to) - splits itself until the range is small */
+  private final class IndexingTask extends RecursiveAction {
+    @Nonnull private final List<Path> files;
+    private final int from;
+    private final int to;
+    @Nonnull private final IndexSnapshot snapshot;
+    @Nonnull private final Map<String, IndexSnapshot.Entry> entries;
+    @Nonnull private final Result result;
+    @Nonnull private final IndexingProgress progress;
+
+    private IndexingTask(
+        @Nonnull List<Path> files,
+        int from,
+        int to,
+        @Nonnull IndexSnapshot snapshot,
+        @Nonnull Map<String, IndexSnapshot.Entry> entries,
+        @Nonnull Result result,
+        @Nonnull IndexingProgress progress) {
+      this.files = files;
+      this.from = from;
+      this.to = to;
+      this.snapshot = snapshot;
+      this.entries = entries;
+      this.result = result;
+      this.progress = progress;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > INDEXING_BATCH_SIZE) {
+        final int mid = (from + to) >>> 1;
+        invokeAll(
+            new IndexingTask(files, from, mid, snapshot, entries, result, progress),
+            new IndexingTask(files, mid, to, snapshot, entries, result, progress));
+        return;
+      }
+
+      for (int i = from; i < to; i++) {
+        final Path jimpleFile = files.get(i);
+        try {
+          indexFile(jimpleFile, snapshot, entries, result);
+        } catch (IllegalStateException | ResolveException | IOException e) {
+          // hint: stdout is the channel to the client
+          System.err.println("Could not index " + jimpleFile);
+          e.printStackTrace();
+          markUnindexable(Util.pathToUri(jimpleFile));
+        }
+        progress.fileIndexed();
+      }
+      publishIfDue(result);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package magpiebridge.jimplelsp;
+
+import de.upb.swt.soot.core.frontend.SootClassSource;
+import de.upb.swt.soot.core.model.SootClass;
+import de.upb.swt.soot.core.types.ClassType;
+import java.util.*;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The WorkspaceSnapshot is an immutable state of the workspace's classes. Requests read the
+ * snapshot which is current when they start without any locking - it stays consistent even if the
+ * workspace changes in the meantime. Writers create a modified copy via a Builder and publish it as
+ * the new current snapshot.
+ *
+ * <p>The mappings are PersistentMaps: a modified copy shares everything but the changed entries
+ * with its base, so publishing a change costs O(changed entries) and not O(workspace).
+ */
+final class WorkspaceSnapshot {
+  static final WorkspaceSnapshot EMPTY =
+      new WorkspaceSnapshot(
+          PersistentMap.empty(),
+          IncrementalClassView.EMPTY,
+          PersistentMap.empty(),
+          PersistentMap.empty());
+
+  @Nonnull private final PersistentMap<String, SootClassSource> textDocumentClassMapping;
+  @Nonnull private final IncrementalClassView classView;
+  // classes restored from the IndexSnapshot: their SootClassSource is created on first access
+  @Nonnull private final PersistentMap<String, ClassType> pendingClassTypes;
+  @Nonnull private final PersistentMap<ClassType, String> pendingUris;
+
+  private WorkspaceSnapshot(
+      @Nonnull PersistentMap<String, SootClassSource> textDocumentClassMapping,
+      @Nonnull IncrementalClassView classView,
+      @Nonnull PersistentMap<String, ClassType> pendingClassTypes,
+      @Nonnull PersistentMap<ClassType, String> pendingUris) {
+    this.textDocumentClassMapping = textDocumentClassMapping;
+    this.classView = classView;
+    this.pendingClassTypes = pendingClassTypes;
+    this.pendingUris = pendingUris;
+  }
+
+  @Nonnull
+  Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  @Nonnull
+  Optional<SootClass> getClass(@Nonnull ClassType classType) {
+    return classView.getClass(classType);
+  }
+
+  boolean contains(@Nonnull String uri) {
+    return textDocumentClassMapping.containsKey(uri);
+  }
+
+  @Nullable
+  ClassType getClassType(@Nonnull String uri) {
+    final SootClassSource scs = textDocumentClassMapping.get(uri);
+    if (scs == null) {
+      return pendingClassTypes.get(uri);
+    }
+    return scs.getClassType();
+  }
+
+  @Nullable
+  String getPendingUri(@Nonnull ClassType classType) {
+    return pendingUris.get(classType);
+  }
+
+  /** @return the class types of the converted and the pending classes */
+  @Nonnull
+  Collection<ClassType> getClassTypes() {
+    final List<ClassType> classTypes =
+        new ArrayList<>(textDocumentClassMapping.size() + pendingClassTypes.size());
+    textDocumentClassMapping.forEach((uri, scs) -> classTypes.add(scs.getClassType()));
+    pendingClassTypes.forEach((uri, classType) -> classTypes.add(classType));
+    return classTypes;
+  }
+
+  /**
+   * A modified copy of a WorkspaceSnapshot. Creating it is cheap - each update replaces just the
+   * path to the changed entries in the (shared) maps.
+   */
+  static final class Builder {
+    @Nonnull private PersistentMap<String, SootClassSource> textDocumentClassMapping;
+    @Nonnull private IncrementalClassView classView;
+    @Nonnull private PersistentMap<String, ClassType> pendingClassTypes;
+    @Nonnull private PersistentMap<ClassType, String> pendingUris;
+
+    private Builder(@Nonnull WorkspaceSnapshot base) {
+      textDocumentClassMapping = base.textDocumentClassMapping;
+      classView = base.classView;
+      pendingClassTypes = base.pendingClassTypes;
+      pendingUris = base.pendingUris;
+    }
+
+    boolean contains(@Nonnull String uri) {
+      return textDocumentClassMapping.containsKey(uri);
+    }
+
+    @Nonnull
+    Builder update(@Nonnull String uri, @Nonnull SootClassSource scs) {
+      final ClassType pendingClassType = pendingClassTypes.get(uri);
+      if (pendingClassType != null) {
+        pendingClassTypes = pendingClassTypes.minus(uri);
+        pendingUris = pendingUris.minus(pendingClassType);
+      }
+      final SootClassSource overriden = textDocumentClassMapping.get(uri);
+      textDocumentClassMapping = textDocumentClassMapping.plus(uri, scs);
+      // swap only the changed class - the other (possibly already resolved) classes stay as is
+      classView = classView.update(overriden, scs);
+      return this;
+    }
+
+    @Nonnull
+    Builder addPending(@Nonnull String uri, @Nonnull ClassType classType) {
+      pendingClassTypes = pendingClassTypes.plus(uri, classType);
+      pendingUris = pendingUris.plus(classType, uri);
+      return this;
+    }
+
+    @Nonnull
+    WorkspaceSnapshot build() {
+      return new WorkspaceSnapshot(
+          textDocumentClassMapping, classView, pendingClassTypes, pendingUris);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package magpiebridge.jimplelsp.document;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+/**
+ * The ChangeCoalescer delays the analysis of a document until a burst of changes settled: each
+ * submitted task replaces the one which still waits for the same uri, so superseded versions are
+ * never analyzed. Tasks of the same uri never run concurrently - a task which settles while the
+ * previous one is still running is started after it completed.
+ */
+public class ChangeCoalescer {
+
+  /** A task which waits for the end of the burst of changes of its uri. */
+  private final class Burst implements Runnable {
+    @Nonnull private final String uri;
+    @Nonnull private final Runnable task;
+    private ScheduledFuture<?> timeout;
+
+    private Burst(@Nonnull String uri, @Nonnull Runnable task) {
+      this.uri = uri;
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      settled(this);
+    }
+  }
+
+  @Nonnull private final Executor executor;
+  @Nonnull private final ScheduledExecutorService timer;
+
+  // guarded by this
+  @Nonnull private final Map<String, Burst> waiting = new HashMap<>();
+  @Nonnull private final Set<String> running = new HashSet<>();
+
+  /** @param executor runs the tasks once their burst settled */
+  public ChangeCoalescer(@Nonnull Executor executor) {
+    this.executor = executor;
+    this.timer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "jimplelsp-coalescer");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * runs the task after delayMillis if no other task is submitted for the same uri in the meantime.
+   */
+  public synchronized void submit(@Nonnull String uri, long delayMillis, @Nonnull Runnable task) {
+    final Burst previous = waiting.get(uri);
+    if (previous != null) {
+      previous.timeout.cancel(false);
+    }
+    final Burst burst = new Burst(uri, task);
+    waiting.put(uri, burst);
+    burst.timeout = timer.schedule(burst, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** @return whether a task of the uri waits or runs i.e. the analyzed state is not up to date */
+  public synchronized boolean isPending(@Nonnull String uri) {
+    return waiting.containsKey(uri) || running.contains(uri);
+  }
+
+  public void shutdown() {
+    timer.shutdownNow();
+  }
+
+  private synchronized void settled(@Nonnull Burst burst) {
+    if (waiting.get(burst.uri) != burst || running.contains(burst.uri)) {
+      // superseded - or started as soon as the running task of the uri completed
+      return;
+    }
+    start(burst);
+  }
+
+  private synchronized void completed(@Nonnull String uri) {
+    running.remove(uri);
+    final Burst next = waiting.get(uri);
+    if (next != null && next.timeout.isDone()) {
+      // its burst settled while the previous task was running
+      start(next);
+    }
+  }
+
+  // hint: called while holding the lock
+  private void start(@Nonnull Burst burst) {
+    waiting.remove(burst.uri);
+    running.add(burst.uri);
+    try {
+      executor.execute(
+          () -> {
+            try {
+              burst.task.run();
+            } finally {
+              completed(burst.uri);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      running.remove(burst.uri);
+      e.printStackTrace();
+    }
+  }
+}
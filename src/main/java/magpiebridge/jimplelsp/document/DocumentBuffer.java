@@ -0,0 +1,217 @@
+package magpiebridge.jimplelsp.document;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+
+/**
+ * The DocumentBuffer holds the current content of an open text document and its version. Range
+ * edits are applied in place via a gap buffer, so an incremental change only moves the characters
+ * between the previous and the current edit location instead of copying the whole document.
+ *
+ * <p>Line breaks are recognized by '\n' (which covers "\r\n" as well).
+ */
+public class DocumentBuffer {
+  private static final int MIN_GAP_SIZE = 1024;
+
+  @Nonnull private final String uri;
+  private int version;
+
+  @Nonnull private char[] buffer = new char[0];
+  private int gapStart;
+  private int gapEnd;
+
+  // offsets of the first character of each line; lineStarts[0] is always 0
+  @Nonnull private int[] lineStarts = new int[16];
+  private int lineCount;
+
+  public DocumentBuffer(@Nonnull String uri, int version, @Nonnull String text) {
+    this.uri = uri;
+    this.version = version;
+    setText(text);
+  }
+
+  @Nonnull
+  public String getUri() {
+    return uri;
+  }
+
+  public synchronized int getVersion() {
+    return version;
+  }
+
+  public synchronized int getLength() {
+    return buffer.length - (gapEnd - gapStart);
+  }
+
+  public synchronized int getLineCount() {
+    return lineCount;
+  }
+
+  /** applies the (incremental or full) content changes of a didChange notification in order. */
+  public synchronized void applyChanges(
+      int version, @Nonnull List<TextDocumentContentChangeEvent> changes) {
+    for (TextDocumentContentChangeEvent change : changes) {
+      final Range range = change.getRange();
+      final String text = change.getText() == null ? "" : change.getText();
+      if (range == null) {
+        // full text sync
+        setText(text);
+      } else {
+        final int start = getOffset(range.getStart());
+        final int end = Math.max(start, getOffset(range.getEnd()));
+        replace(start, end, text);
+      }
+    }
+    this.version = version;
+  }
+
+  /** @return a copy of the current content */
+  @Nonnull
+  public synchronized String getText() {
+    final int tailLength = buffer.length - gapEnd;
+    return new StringBuilder(gapStart + tailLength)
+        .append(buffer, 0, gapStart)
+        .append(buffer, gapEnd, tailLength)
+        .toString();
+  }
+
+  public synchronized char charAt(int offset) {
+    if (offset < 0 || offset >= getLength()) {
+      throw new IndexOutOfBoundsException("offset " + offset + " is out of bounds.");
+    }
+    return offset < gapStart ? buffer[offset] : buffer[offset + gapEnd - gapStart];
+  }
+
+  /**
+   * converts a zero-based line/column Position into an offset. Positions beyond the end of a line
+   * are clamped to the end of that line (i.e. in front of its line terminator, so "\r\n" is never
+   * split), lines beyond the document are clamped to its end.
+   */
+  public synchronized int getOffset(@Nonnull Position position) {
+    final int line = position.getLine();
+    if (line < 0) {
+      return 0;
+    }
+    if (line >= lineCount) {
+      return getLength();
+    }
+    final int lineStart = lineStarts[line];
+    int lineEnd = line + 1 < lineCount ? lineStarts[line + 1] - 1 : getLength();
+    if (line + 1 < lineCount && lineEnd > lineStart && charAt(lineEnd - 1) == '\r') {
+      lineEnd--;
+    }
+    return Math.min(lineStart + Math.max(0, position.getCharacter()), lineEnd);
+  }
+
+  private void setText(@Nonnull String text) {
+    buffer = new char[text.length() + MIN_GAP_SIZE];
+    text.getChars(0, text.length(), buffer, 0);
+    gapStart = text.length();
+    gapEnd = buffer.length;
+
+    lineStarts[0] = 0;
+    lineCount = 1;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        if (lineCount == lineStarts.length) {
+          lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+        }
+        lineStarts[lineCount++] = i + 1;
+      }
+    }
+  }
+
+  private void replace(int start, int end, @Nonnull String text) {
+    updateLineStarts(start, end, text);
+
+    moveGap(start);
+    // the replaced characters are directly behind the gap now: delete them by widening the gap
+    gapEnd += end - start;
+    ensureGap(text.length());
+    text.getChars(0, text.length(), buffer, gapStart);
+    gapStart += text.length();
+  }
+
+  private void moveGap(int offset) {
+    if (offset < gapStart) {
+      final int count = gapStart - offset;
+      System.arraycopy(buffer, offset, buffer, gapEnd - count, count);
+      gapStart -= count;
+      gapEnd -= count;
+    } else if (offset > gapStart) {
+      final int count = offset - gapStart;
+      System.arraycopy(buffer, gapEnd, buffer, gapStart, count);
+      gapStart += count;
+      gapEnd += count;
+    }
+  }
+
+  private void ensureGap(int required) {
+    if (gapEnd - gapStart >= required) {
+      return;
+    }
+    final int tailLength = buffer.length - gapEnd;
+    final int capacity = Math.max(buffer.length * 2, getLength() + required + MIN_GAP_SIZE);
+    final char[] newBuffer = new char[capacity];
+    System.arraycopy(buffer, 0, newBuffer, 0, gapStart);
+    System.arraycopy(buffer, gapEnd, newBuffer, capacity - tailLength, tailLength);
+    gapEnd = capacity - tailLength;
+    buffer = newBuffer;
+  }
+
+  private void updateLineStarts(int start, int end, @Nonnull String text) {
+    final int startLine = getLine(start);
+    // line starts in (start, end] are removed as their preceding line break is replaced
+    final int endLine = getLine(end);
+
+    int insertedLines = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        insertedLines++;
+      }
+    }
+
+    final int newLineCount = lineCount - (endLine - startLine) + insertedLines;
+    int[] target = lineStarts;
+    if (newLineCount > lineStarts.length) {
+      target = new int[Math.max(newLineCount, lineStarts.length * 2)];
+      System.arraycopy(lineStarts, 0, target, 0, startLine + 1);
+    }
+
+    // shift the line starts behind the edit
+    final int delta = text.length() - (end - start);
+    final int tailFrom = endLine + 1;
+    final int tailTo = startLine + 1 + insertedLines;
+    final int tailLength = lineCount - tailFrom;
+    System.arraycopy(lineStarts, tailFrom, target, tailTo, tailLength);
+    for (int i = tailTo; i < tailTo + tailLength; i++) {
+      target[i] += delta;
+    }
+
+    // add the line starts of the inserted text
+    int idx = startLine + 1;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        target[idx++] = start + i + 1;
+      }
+    }
+
+    lineStarts = target;
+    lineCount = newLineCount;
+  }
+
+  /** @return the zero-based line which contains the given offset */
+  private int getLine(int offset) {
+    final int idx = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+    return idx >= 0 ? idx : -idx - 2;
+  }
+
+  @Override
+  public String toString() {
+    return "DocumentBuffer{" + "uri='" + uri + '\'' + ", version=" + version + '}';
+  }
+}
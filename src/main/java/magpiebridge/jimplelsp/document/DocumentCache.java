@@ -0,0 +1,154 @@
+package magpiebridge.jimplelsp.document;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The DocumentCache holds per-document data (e.g. ParsedDocuments) by uri. Entries of pinned i.e.
+ * open documents are kept as long as they are pinned; entries of closed documents are kept in
+ * least-recently-used order and evicted once there are more than maxClosedDocuments of them or
+ * their summed weight exceeds maxClosedWeight. An evicted entry is simply loaded again (e.g.
+ * parsed from disk) when it is needed the next time.
+ *
+ * @param <T> type of the cached entries
+ */
+public class DocumentCache<T> {
+
+  private final int maxClosedDocuments;
+  private final long maxClosedWeight;
+  @Nonnull private final ToLongFunction<T> weigher;
+
+  // guarded by this
+  @Nonnull private final Set<String> pinnedUris = new HashSet<>();
+  @Nonnull private final Map<String, T> pinned = new HashMap<>();
+  // hint: access order i.e. the least recently used entry comes first
+  @Nonnull private final LinkedHashMap<String, T> closed = new LinkedHashMap<>(16, 0.75f, true);
+  private long closedWeight = 0;
+
+  /**
+   * @param maxClosedDocuments maximum amount of cached entries of closed documents
+   * @param maxClosedWeight maximum summed weight of the cached entries of closed documents
+   * @param weigher estimates the retained size of an entry - must not change for an entry
+   */
+  public DocumentCache(
+      int maxClosedDocuments, long maxClosedWeight, @Nonnull ToLongFunction<T> weigher) {
+    this.maxClosedDocuments = maxClosedDocuments;
+    this.maxClosedWeight = maxClosedWeight;
+    this.weigher = weigher;
+  }
+
+  @Nullable
+  public synchronized T get(@Nonnull String uri) {
+    final T entry = pinned.get(uri);
+    return entry != null ? entry : closed.get(uri);
+  }
+
+  /**
+   * @param loader is called outside of the lock, so loading different documents runs concurrently
+   * @return the cached entry or the (then cached) entry of the loader - null if it could not load
+   */
+  @Nullable
+  public T getOrLoad(@Nonnull String uri, @Nonnull Function<String, T> loader) {
+    final T cached = get(uri);
+    if (cached != null) {
+      return cached;
+    }
+    final T loaded = loader.apply(uri);
+    if (loaded == null) {
+      return null;
+    }
+    synchronized (this) {
+      // another thread could have been faster
+      final T current = get(uri);
+      if (current != null) {
+        return current;
+      }
+      put(uri, loaded);
+      return loaded;
+    }
+  }
+
+  public synchronized void put(@Nonnull String uri, @Nonnull T entry) {
+    remove(uri);
+    if (pinnedUris.contains(uri)) {
+      pinned.put(uri, entry);
+    } else {
+      addClosed(uri, entry);
+    }
+  }
+
+  /**
+   * like Map.compute: the remapping function is called with the current entry (or null) and its
+   * result replaces the entry - null removes it. It is called under the lock i.e. keep it cheap.
+   */
+  @Nullable
+  public synchronized T compute(
+      @Nonnull String uri, @Nonnull BiFunction<String, ? super T, ? extends T> remapping) {
+    final T current = get(uri);
+    final T entry = remapping.apply(uri, current);
+    if (entry == current) {
+      return entry;
+    }
+    if (entry == null) {
+      remove(uri);
+    } else {
+      put(uri, entry);
+    }
+    return entry;
+  }
+
+  public synchronized void remove(@Nonnull String uri) {
+    pinned.remove(uri);
+    final T entry = closed.remove(uri);
+    if (entry != null) {
+      closedWeight -= weigher.applyAsLong(entry);
+    }
+  }
+
+  /** keeps the entry of the given (e.g. opened) document until it is unpinned. */
+  public synchronized void pin(@Nonnull String uri) {
+    pinnedUris.add(uri);
+    final T entry = closed.remove(uri);
+    if (entry != null) {
+      closedWeight -= weigher.applyAsLong(entry);
+      pinned.put(uri, entry);
+    }
+  }
+
+  /** makes the entry of the given (e.g. closed) document evictable again. */
+  public synchronized void unpin(@Nonnull String uri) {
+    pinnedUris.remove(uri);
+    final T entry = pinned.remove(uri);
+    if (entry != null) {
+      addClosed(uri, entry);
+    }
+  }
+
+  public synchronized boolean isPinned(@Nonnull String uri) {
+    return pinnedUris.contains(uri);
+  }
+
+  public synchronized int size() {
+    return pinned.size() + closed.size();
+  }
+
+  private void addClosed(@Nonnull String uri, @Nonnull T entry) {
+    closed.put(uri, entry);
+    closedWeight += weigher.applyAsLong(entry);
+    final Iterator<T> leastRecentlyUsed = closed.values().iterator();
+    while ((closed.size() > maxClosedDocuments || closedWeight > maxClosedWeight)
+        && leastRecentlyUsed.hasNext()) {
+      closedWeight -= weigher.applyAsLong(leastRecentlyUsed.next());
+      leastRecentlyUsed.remove();
+    }
+  }
+}
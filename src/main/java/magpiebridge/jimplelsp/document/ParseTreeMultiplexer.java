@@ -0,0 +1,58 @@
+package magpiebridge.jimplelsp.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * The ParseTreeMultiplexer passes the events of a single walk over a parse tree to all registered
+ * listeners, so multiple consumers of a document don't need to parse and walk it on their own.
+ */
+public class ParseTreeMultiplexer implements ParseTreeListener {
+  @Nonnull private final List<ParseTreeListener> listeners = new ArrayList<>();
+
+  public void add(@Nonnull ParseTreeListener listener) {
+    listeners.add(listener);
+  }
+
+  public void walk(@Nonnull ParseTree tree) {
+    ParseTreeWalker.DEFAULT.walk(this, tree);
+  }
+
+  @Override
+  public void enterEveryRule(ParserRuleContext ctx) {
+    for (ParseTreeListener listener : listeners) {
+      listener.enterEveryRule(ctx);
+      // calls the rule specific enter method of the listener i.e. enterMethod(...)
+      ctx.enterRule(listener);
+    }
+  }
+
+  @Override
+  public void exitEveryRule(ParserRuleContext ctx) {
+    for (ParseTreeListener listener : listeners) {
+      ctx.exitRule(listener);
+      listener.exitEveryRule(ctx);
+    }
+  }
+
+  @Override
+  public void visitTerminal(TerminalNode node) {
+    for (ParseTreeListener listener : listeners) {
+      listener.visitTerminal(node);
+    }
+  }
+
+  @Override
+  public void visitErrorNode(ErrorNode node) {
+    for (ParseTreeListener listener : listeners) {
+      listener.visitErrorNode(node);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package magpiebridge.jimplelsp.document;
+
+import de.upb.swt.soot.jimple.JimpleParser;
+import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import magpiebridge.jimplelsp.SyntaxHighlightingProvider;
+import magpiebridge.jimplelsp.Util;
+import magpiebridge.jimplelsp.provider.JimpleLabelProvider;
+import magpiebridge.jimplelsp.resolver.LocalPositionResolver;
+import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
+import org.antlr.v4.runtime.CharStreams;
+import org.eclipse.lsp4j.SemanticTokens;
+import org.eclipse.lsp4j.SemanticTokensLegend;
+
+/**
+ * The ParsedDocument holds everything that is derived from the parse tree of a specific version of
+ * a document. The text is parsed once and all per-file consumers (signature positions, local
+ * positions, labels, semantic tokens) are filled during a single walk over that parse tree.
+ */
+public class ParsedDocument {
+  // resultIds of the semantic tokens need to be unique: versions of closed documents are not
+  private static final AtomicLong RESULT_IDS = new AtomicLong();
+
+  @Nonnull private final String uri;
+  private final int version;
+  private final int textLength;
+
+  @Nonnull private final SignaturePositionResolver signaturePositionResolver;
+  @Nonnull private final LocalPositionResolver localPositionResolver;
+  @Nonnull private final JimpleLabelProvider labelProvider;
+  @Nonnull private final SemanticTokens semanticTokens;
+
+  /**
+   * parses the given text.
+   *
+   * @throws IllegalStateException if the text is not valid jimple
+   */
+  public ParsedDocument(
+      @Nonnull String uri,
+      int version,
+      @Nonnull String text,
+      @Nonnull SemanticTokensLegend tokenLegend) {
+    this.uri = uri;
+    this.version = version;
+    this.textLength = text.length();
+
+    final Path path = Util.uriToPath(uri);
+    final JimpleParser parser =
+        JimpleConverterUtil.createJimpleParser(CharStreams.fromString(text), path);
+
+    final ParseTreeMultiplexer walk = new ParseTreeMultiplexer();
+    signaturePositionResolver = new SignaturePositionResolver(path, walk);
+    localPositionResolver = new LocalPositionResolver(path, walk);
+    labelProvider = new JimpleLabelProvider();
+    walk.add(labelProvider);
+    final SyntaxHighlightingProvider syntaxHighlightingProvider =
+        new SyntaxHighlightingProvider(tokenLegend, walk);
+
+    walk.walk(parser.file());
+    semanticTokens = syntaxHighlightingProvider.getSemanticTokens();
+    semanticTokens.setResultId(Long.toString(RESULT_IDS.incrementAndGet()));
+  }
+
+  @Nonnull
+  public String getUri() {
+    return uri;
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  /** @return length of the parsed text - a measure for the memory retained by this document */
+  public int getTextLength() {
+    return textLength;
+  }
+
+  @Nonnull
+  public SignaturePositionResolver getSignaturePositionResolver() {
+    return signaturePositionResolver;
+  }
+
+  @Nonnull
+  public LocalPositionResolver getLocalPositionResolver() {
+    return localPositionResolver;
+  }
+
+  @Nonnull
+  public JimpleLabelProvider getLabelProvider() {
+    return labelProvider;
+  }
+
+  /** @return the semantic tokens of this version - identified by a unique resultId */
+  @Nonnull
+  public SemanticTokens getSemanticTokens() {
+    return semanticTokens;
+  }
+
+  @Override
+  public String toString() {
+    return "ParsedDocument{" + "uri='" + uri + '\'' + ", version=" + version + '}';
+  }
+}
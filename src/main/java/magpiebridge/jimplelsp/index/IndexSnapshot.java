@@ -0,0 +1,487 @@
+package magpiebridge.jimplelsp.index;
+
+import de.upb.swt.soot.core.signatures.FieldSignature;
+import de.upb.swt.soot.core.signatures.MethodSignature;
+import de.upb.swt.soot.core.signatures.Signature;
+import de.upb.swt.soot.core.types.ClassType;
+import de.upb.swt.soot.core.types.Type;
+import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import magpiebridge.jimplelsp.resolver.SignatureInterner;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+
+/**
+ * The IndexSnapshot persists the indexed information of the workspace's jimple files i.e. the
+ * uri->class mapping, the signature occurences, the declarations and the supertypes of each class.
+ * An Entry is keyed by the file's size, modification time and content hash, so on the next start
+ * only files that changed since need to be parsed again.
+ *
+ * <p>Format: the rootpaths of the indexed workspace (the file name of a snapshot is only a hash of
+ * them), a table of all signatures which is referenced by index from the file entries.
+ *
+ * <p>Loading a snapshot only locates the entries of the files; an Entry and the signatures it
+ * references are decoded when it is requested.
+ */
+public class IndexSnapshot {
+  private static final int MAGIC = 0x4a4c5350; // "JLSP"
+  private static final int FORMAT_VERSION = 3;
+
+  private static final byte CLASSTYPE = 0;
+  private static final byte METHODSIGNATURE = 1;
+  private static final byte FIELDSIGNATURE = 2;
+
+  public static final IndexSnapshot EMPTY = new IndexSnapshot(Collections.emptyMap(), null);
+
+  // uri -> offset of its (not yet decoded) Entry
+  @Nonnull private final Map<String, Integer> entryOffsets;
+  @Nullable private final Reader reader;
+
+  private IndexSnapshot(@Nonnull Map<String, Integer> entryOffsets, @Nullable Reader reader) {
+    this.entryOffsets = entryOffsets;
+    this.reader = reader;
+  }
+
+  /** The indexed information of a single jimple file. */
+  public static class Entry {
+    @Nonnull private final String uri;
+    private final long size;
+    private final long lastModified;
+    private final long hash;
+    @Nonnull private final ClassType classType;
+    @Nullable private final ClassType superclass;
+    @Nonnull private final Set<ClassType> interfaces;
+    @Nonnull private final Map<Signature, List<Range>> occurences;
+    @Nonnull private final Map<Signature, Range> declarations;
+
+    public Entry(
+        @Nonnull String uri,
+        long size,
+        long lastModified,
+        long hash,
+        @Nonnull ClassType classType,
+        @Nullable ClassType superclass,
+        @Nonnull Set<ClassType> interfaces,
+        @Nonnull Map<Signature, List<Range>> occurences,
+        @Nonnull Map<Signature, Range> declarations) {
+      this.uri = uri;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+      this.classType = classType;
+      this.superclass = superclass;
+      this.interfaces = interfaces;
+      this.occurences = occurences;
+      this.declarations = declarations;
+    }
+
+    @Nonnull
+    public String getUri() {
+      return uri;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public long getHash() {
+      return hash;
+    }
+
+    @Nonnull
+    public ClassType getClassType() {
+      return classType;
+    }
+
+    @Nullable
+    public ClassType getSuperclass() {
+      return superclass;
+    }
+
+    @Nonnull
+    public Set<ClassType> getInterfaces() {
+      return interfaces;
+    }
+
+    @Nonnull
+    public Map<Signature, List<Range>> getOccurences() {
+      return occurences;
+    }
+
+    @Nonnull
+    public Map<Signature, Range> getDeclarations() {
+      return declarations;
+    }
+
+    /** @return true if the file still has the same size and modification time as indexed */
+    public boolean isUnchanged(long size, long lastModified) {
+      return this.size == size && this.lastModified == lastModified;
+    }
+  }
+
+  public static long hash(@Nonnull byte[] content) {
+    final CRC32 crc = new CRC32();
+    crc.update(content, 0, content.length);
+    return crc.getValue();
+  }
+
+  /**
+   * @return the snapshot of the given workspace stored in the given file or an empty one if there
+   *     is none - or it belongs to another workspace
+   */
+  @Nonnull
+  public static IndexSnapshot load(@Nonnull Path snapshotFile, @Nonnull List<Path> rootpaths) {
+    if (!Files.isRegularFile(snapshotFile)) {
+      return EMPTY;
+    }
+    try {
+      // hint: the file is read into the heap instead of mapping it - a mapped file can not be
+      // replaced on Windows as long as it is not unmapped (which can't be triggered in Java 8)
+      final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        return EMPTY;
+      }
+      final int rootpathCount = buffer.getInt();
+      final List<String> indexedRootpaths = new ArrayList<>(Math.min(rootpathCount, 64));
+      for (int i = 0; i < rootpathCount; i++) {
+        indexedRootpaths.add(Reader.readString(buffer));
+      }
+      if (!indexedRootpaths.equals(toStrings(rootpaths))) {
+        // hash collision: the snapshot of another workspace is replaced after indexing
+        return EMPTY;
+      }
+      final Reader reader = new Reader(buffer, snapshotFile);
+      return new IndexSnapshot(reader.scanEntries(), reader);
+    } catch (IOException | RuntimeException e) {
+      // a broken snapshot is not fatal: everything is indexed from scratch
+      e.printStackTrace();
+      return EMPTY;
+    }
+  }
+
+  /**
+   * @return the Entry of the given uri or null if the snapshot contains none - the Entry is decoded
+   *     on each call
+   */
+  @Nullable
+  public Entry get(@Nonnull String uri) {
+    final Integer offset = entryOffsets.get(uri);
+    if (offset == null || reader == null) {
+      return null;
+    }
+    try {
+      return reader.readEntry(uri, offset);
+    } catch (RuntimeException e) {
+      // a broken entry is not fatal: the file is indexed from scratch
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /** @return the amount of entries */
+  public int size() {
+    return entryOffsets.size();
+  }
+
+  /** writes the given entries of the given workspace atomically into the given file. */
+  public static void write(
+      @Nonnull Path snapshotFile, @Nonnull List<Path> rootpaths, @Nonnull Collection<Entry> entries)
+      throws IOException {
+    // assign an index to each signature
+    final Map<Signature, Integer> signatureIdx = new LinkedHashMap<>();
+    for (Entry entry : entries) {
+      addSignature(signatureIdx, entry.getClassType());
+      if (entry.getSuperclass() != null) {
+        addSignature(signatureIdx, entry.getSuperclass());
+      }
+      entry.getInterfaces().forEach(itf -> addSignature(signatureIdx, itf));
+      entry.getOccurences().keySet().forEach(sig -> addSignature(signatureIdx, sig));
+      entry.getDeclarations().keySet().forEach(sig -> addSignature(signatureIdx, sig));
+    }
+
+    Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+    final Path tmpFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      final List<String> rootpathStrings = toStrings(rootpaths);
+      out.writeInt(rootpathStrings.size());
+      for (String rootpath : rootpathStrings) {
+        writeString(out, rootpath);
+      }
+
+      out.writeInt(signatureIdx.size());
+      for (Signature sig : signatureIdx.keySet()) {
+        if (sig instanceof ClassType) {
+          out.writeByte(CLASSTYPE);
+          writeString(out, ((ClassType) sig).getFullyQualifiedName());
+        } else if (sig instanceof MethodSignature) {
+          final MethodSignature methodSig = (MethodSignature) sig;
+          out.writeByte(METHODSIGNATURE);
+          out.writeInt(signatureIdx.get(methodSig.getDeclClassType()));
+          writeString(out, methodSig.getName());
+          writeString(out, methodSig.getType().toString());
+          out.writeInt(methodSig.getParameterTypes().size());
+          for (Type parameterType : methodSig.getParameterTypes()) {
+            writeString(out, parameterType.toString());
+          }
+        } else {
+          final FieldSignature fieldSig = (FieldSignature) sig;
+          out.writeByte(FIELDSIGNATURE);
+          out.writeInt(signatureIdx.get(fieldSig.getDeclClassType()));
+          writeString(out, fieldSig.getName());
+          writeString(out, fieldSig.getType().toString());
+        }
+      }
+
+      out.writeInt(entries.size());
+      for (Entry entry : entries) {
+        writeString(out, entry.getUri());
+        out.writeLong(entry.getSize());
+        out.writeLong(entry.getLastModified());
+        out.writeLong(entry.getHash());
+        out.writeInt(signatureIdx.get(entry.getClassType()));
+        out.writeInt(entry.getSuperclass() == null ? -1 : signatureIdx.get(entry.getSuperclass()));
+        out.writeInt(entry.getInterfaces().size());
+        for (ClassType itf : entry.getInterfaces()) {
+          out.writeInt(signatureIdx.get(itf));
+        }
+
+        out.writeInt(entry.getOccurences().size());
+        for (Map.Entry<Signature, List<Range>> occurence : entry.getOccurences().entrySet()) {
+          out.writeInt(signatureIdx.get(occurence.getKey()));
+          out.writeInt(occurence.getValue().size());
+          for (Range range : occurence.getValue()) {
+            writeRange(out, range);
+          }
+        }
+
+        out.writeInt(entry.getDeclarations().size());
+        for (Map.Entry<Signature, Range> declaration : entry.getDeclarations().entrySet()) {
+          out.writeInt(signatureIdx.get(declaration.getKey()));
+          writeRange(out, declaration.getValue());
+        }
+      }
+    }
+    Files.move(
+        tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void addSignature(@Nonnull Map<Signature, Integer> signatureIdx, Signature sig) {
+    // the declaring class is referenced by index, so it needs to be written before the member
+    if (sig instanceof MethodSignature) {
+      addSignature(signatureIdx, ((MethodSignature) sig).getDeclClassType());
+    } else if (sig instanceof FieldSignature) {
+      addSignature(signatureIdx, ((FieldSignature) sig).getDeclClassType());
+    }
+    signatureIdx.putIfAbsent(sig, signatureIdx.size());
+  }
+
+  @Nonnull
+  private static List<String> toStrings(@Nonnull List<Path> paths) {
+    final List<String> strings = new ArrayList<>(paths.size());
+    for (Path path : paths) {
+      strings.add(path.toString());
+    }
+    return strings;
+  }
+
+  private static void writeRange(@Nonnull DataOutputStream out, @Nonnull Range range)
+      throws IOException {
+    out.writeInt(range.getStart().getLine());
+    out.writeInt(range.getStart().getCharacter());
+    out.writeInt(range.getEnd().getLine());
+    out.writeInt(range.getEnd().getCharacter());
+  }
+
+  private static void writeString(@Nonnull DataOutputStream out, @Nonnull String str)
+      throws IOException {
+    final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /** decodes the signatures and entries of a loaded snapshot on demand. */
+  private static final class Reader {
+    @Nonnull private final ByteBuffer buffer;
+    @Nonnull private final JimpleConverterUtil util;
+    // offset of each signature in the buffer and the signatures which are decoded already
+    @Nonnull private final int[] signatureOffsets;
+    @Nonnull private final Signature[] signatures;
+
+    /** locates the signatures - the buffer is positioned behind the header. */
+    private Reader(@Nonnull ByteBuffer buffer, @Nonnull Path snapshotFile) {
+      this.buffer = buffer;
+      this.util = new JimpleConverterUtil(snapshotFile);
+      final int signatureCount = buffer.getInt();
+      signatureOffsets = new int[signatureCount];
+      signatures = new Signature[signatureCount];
+      for (int i = 0; i < signatureCount; i++) {
+        signatureOffsets[i] = buffer.position();
+        final byte kind = buffer.get();
+        if (kind == CLASSTYPE) {
+          skipString(buffer);
+        } else if (kind == METHODSIGNATURE) {
+          skip(buffer, 4);
+          skipString(buffer);
+          skipString(buffer);
+          final int parameterCount = buffer.getInt();
+          for (int j = 0; j < parameterCount; j++) {
+            skipString(buffer);
+          }
+        } else if (kind == FIELDSIGNATURE) {
+          skip(buffer, 4);
+          skipString(buffer);
+          skipString(buffer);
+        } else {
+          throw new IllegalStateException("unknown signature kind " + kind);
+        }
+      }
+    }
+
+    /** @return uri -> offset of each entry (behind its uri) - the entries are only skipped */
+    @Nonnull
+    private Map<String, Integer> scanEntries() {
+      final int entryCount = buffer.getInt();
+      final Map<String, Integer> entryOffsets = new HashMap<>(entryCount * 2);
+      for (int i = 0; i < entryCount; i++) {
+        final String uri = readString(buffer);
+        entryOffsets.put(uri, buffer.position());
+        // size, lastModified, hash, classType, superclass
+        skip(buffer, 3 * 8 + 2 * 4);
+        skip(buffer, buffer.getInt() * 4);
+        final int occurenceCount = buffer.getInt();
+        for (int j = 0; j < occurenceCount; j++) {
+          skip(buffer, 4);
+          skip(buffer, buffer.getInt() * 16);
+        }
+        skip(buffer, buffer.getInt() * 20);
+      }
+      return entryOffsets;
+    }
+
+    @Nonnull
+    private synchronized Signature getSignature(int idx) {
+      Signature sig = signatures[idx];
+      if (sig != null) {
+        return sig;
+      }
+      final ByteBuffer in = buffer.duplicate();
+      in.position(signatureOffsets[idx]);
+      final byte kind = in.get();
+      if (kind == CLASSTYPE) {
+        sig = util.getClassType(readString(in));
+      } else if (kind == METHODSIGNATURE) {
+        final ClassType declClass = (ClassType) getSignature(in.getInt());
+        final String name = readString(in);
+        final Type returnType = util.getType(readString(in));
+        final int parameterCount = in.getInt();
+        final List<Type> parameterTypes = new ArrayList<>(parameterCount);
+        for (int j = 0; j < parameterCount; j++) {
+          parameterTypes.add(util.getType(readString(in)));
+        }
+        sig =
+            util.getIdentifierFactory()
+                .getMethodSignature(name, declClass, returnType, parameterTypes);
+      } else {
+        final ClassType declClass = (ClassType) getSignature(in.getInt());
+        final String name = readString(in);
+        sig =
+            util.getIdentifierFactory()
+                .getFieldSignature(name, declClass, util.getType(readString(in)));
+      }
+      // restored index keys are the canonical instances like the ones of freshly indexed files
+      sig = SignatureInterner.intern(sig);
+      signatures[idx] = sig;
+      return sig;
+    }
+
+    /** decodes the Entry at the given offset - may be called concurrently. */
+    @Nonnull
+    private Entry readEntry(@Nonnull String uri, int offset) {
+      final ByteBuffer in = buffer.duplicate();
+      in.position(offset);
+      final long size = in.getLong();
+      final long lastModified = in.getLong();
+      final long hash = in.getLong();
+      final ClassType classType = (ClassType) getSignature(in.getInt());
+      final int superclassIdx = in.getInt();
+      final ClassType superclass =
+          superclassIdx < 0 ? null : (ClassType) getSignature(superclassIdx);
+      final int interfaceCount = in.getInt();
+      final Set<ClassType> interfaces = new HashSet<>(interfaceCount * 2);
+      for (int j = 0; j < interfaceCount; j++) {
+        interfaces.add((ClassType) getSignature(in.getInt()));
+      }
+
+      final int occurenceCount = in.getInt();
+      final Map<Signature, List<Range>> occurences = new LinkedHashMap<>(occurenceCount * 2);
+      for (int j = 0; j < occurenceCount; j++) {
+        final Signature sig = getSignature(in.getInt());
+        final int rangeCount = in.getInt();
+        final List<Range> ranges = new ArrayList<>(rangeCount);
+        for (int k = 0; k < rangeCount; k++) {
+          ranges.add(readRange(in));
+        }
+        occurences.put(sig, ranges);
+      }
+
+      final int declarationCount = in.getInt();
+      final Map<Signature, Range> declarations = new LinkedHashMap<>(declarationCount * 2);
+      for (int j = 0; j < declarationCount; j++) {
+        final Signature sig = getSignature(in.getInt());
+        declarations.put(sig, readRange(in));
+      }
+
+      return new Entry(
+          uri,
+          size,
+          lastModified,
+          hash,
+          classType,
+          superclass,
+          interfaces,
+          occurences,
+          declarations);
+    }
+
+    @Nonnull
+    private static Range readRange(@Nonnull ByteBuffer in) {
+      return new Range(
+          new Position(in.getInt(), in.getInt()), new Position(in.getInt(), in.getInt()));
+    }
+
+    @Nonnull
+    private static String readString(@Nonnull ByteBuffer in) {
+      final byte[] bytes = new byte[in.getInt()];
+      in.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(@Nonnull ByteBuffer in) {
+      skip(in, in.getInt());
+    }
+
+    /** @throws IllegalArgumentException if the buffer ends before */
+    private static void skip(@Nonnull ByteBuffer in, int bytes) {
+      if (bytes < 0) {
+        throw new IllegalArgumentException("negative length " + bytes);
+      }
+      in.position(in.position() + bytes);
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package magpiebridge.jimplelsp.index;
+
+import de.upb.swt.soot.core.signatures.MethodSignature;
+import de.upb.swt.soot.core.signatures.MethodSubSignature;
+import de.upb.swt.soot.core.signatures.Signature;
+import de.upb.swt.soot.core.types.ClassType;
+import java.util.*;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+/**
+ * The MethodOverrideIndex maps each MethodSubSignature to the classes of the workspace which
+ * declare a method with it (and where). Together with the TypeHierarchyIndex this answers which
+ * methods override a given method and which methods it overrides - without fetching and scanning
+ * the SootClasses of the hierarchy. It is fed with the declarations of each document, just like the
+ * SymbolIndex.
+ */
+public class MethodOverrideIndex {
+
+  private static final String CONSTRUCTOR_NAME = "<init>";
+  private static final String STATIC_INITIALIZER_NAME = "<clinit>";
+
+  @Nonnull private final TypeHierarchyIndex typeHierarchy;
+
+  /** A method and the location of its declaration. */
+  private static final class Declaration {
+    @Nonnull private final MethodSignature method;
+    @Nonnull private final Location location;
+
+    private Declaration(@Nonnull MethodSignature method, @Nonnull Location location) {
+      this.method = method;
+      this.location = location;
+    }
+  }
+
+  // subsignature -> declaring class -> declaration
+  @Nonnull
+  private final Map<MethodSubSignature, Map<ClassType, Declaration>> declarations =
+      new HashMap<>();
+
+  // uri -> the methods declared in that document (to remove outdated declarations on update)
+  @Nonnull private final Map<String, List<MethodSignature>> documentMethods = new HashMap<>();
+
+  public MethodOverrideIndex(@Nonnull TypeHierarchyIndex typeHierarchy) {
+    this.typeHierarchy = typeHierarchy;
+  }
+
+  /** replaces the methods declared in the given document. */
+  public synchronized void update(
+      @Nonnull String uri, @Nonnull Map<Signature, Range> documentDeclarations) {
+    remove(uri);
+    final List<MethodSignature> methods = new ArrayList<>();
+    documentDeclarations.forEach(
+        (sig, range) -> {
+          if (!(sig instanceof MethodSignature) || !isOverridable((MethodSignature) sig)) {
+            return;
+          }
+          final MethodSignature method = (MethodSignature) sig;
+          declarations
+              .computeIfAbsent(method.getSubSignature(), k -> new HashMap<>())
+              .put(method.getDeclClassType(), new Declaration(method, new Location(uri, range)));
+          methods.add(method);
+        });
+    documentMethods.put(uri, methods);
+  }
+
+  /**
+   * adds the methods of the given document only if the index holds no (e.g. newer) declarations of
+   * that document yet.
+   */
+  public synchronized void updateIfAbsent(
+      @Nonnull String uri, @Nonnull Map<Signature, Range> documentDeclarations) {
+    if (!documentMethods.containsKey(uri)) {
+      update(uri, documentDeclarations);
+    }
+  }
+
+  /** removes all methods declared in the given document. */
+  public synchronized void remove(@Nonnull String uri) {
+    final List<MethodSignature> methods = documentMethods.remove(uri);
+    if (methods == null) {
+      return;
+    }
+    for (MethodSignature method : methods) {
+      final Map<ClassType, Declaration> declarers = declarations.get(method.getSubSignature());
+      if (declarers != null) {
+        final Declaration declaration = declarers.get(method.getDeclClassType());
+        // hint: another document could declare the same class
+        if (declaration != null && declaration.location.getUri().equals(uri)) {
+          declarers.remove(method.getDeclClassType());
+        }
+        if (declarers.isEmpty()) {
+          declarations.remove(method.getSubSignature());
+        }
+      }
+    }
+  }
+
+  private static boolean isOverridable(@Nonnull MethodSignature method) {
+    final String name = method.getName();
+    return !name.equals(CONSTRUCTOR_NAME) && !name.equals(STATIC_INITIALIZER_NAME);
+  }
+
+  /** @return the declaration of the given method or null if it is not declared in the workspace */
+  @Nullable
+  public synchronized Location getLocation(@Nonnull MethodSignature method) {
+    final Map<ClassType, Declaration> declarers = declarations.get(method.getSubSignature());
+    if (declarers == null) {
+      return null;
+    }
+    final Declaration declaration = declarers.get(method.getDeclClassType());
+    return declaration == null ? null : declaration.location;
+  }
+
+  /**
+   * @param cancelChecker is checked per declaring class
+   * @return the Locations of all methods which (transitively) override the given method
+   */
+  @Nonnull
+  public synchronized List<Location> getOverriders(
+      @Nonnull MethodSignature method, @Nullable CancelChecker cancelChecker) {
+    final Map<ClassType, Declaration> declarers = declarations.get(method.getSubSignature());
+    if (declarers == null || !isOverridable(method)) {
+      return new ArrayList<>();
+    }
+    final ClassType declClassType = method.getDeclClassType();
+    final List<Location> overriders = new ArrayList<>();
+    // hint: usually there are way less classes declaring a subsignature than subtypes of a class
+    declarers.forEach(
+        (classType, declaration) -> {
+          if (cancelChecker != null) {
+            cancelChecker.checkCanceled();
+          }
+          if (!classType.equals(declClassType)
+              && typeHierarchy.isSubtype(classType, declClassType)) {
+            overriders.add(declaration.location);
+          }
+        });
+    return overriders;
+  }
+
+  /**
+   * @return the methods which are overridden by the given method i.e. the nearest declarations of
+   *     its subsignature in each branch of the supertypes of its declaring class
+   */
+  @Nonnull
+  public synchronized List<MethodSignature> getOverridden(@Nonnull MethodSignature method) {
+    final Map<ClassType, Declaration> declarers = declarations.get(method.getSubSignature());
+    if (declarers == null || !isOverridable(method)) {
+      return new ArrayList<>();
+    }
+    final List<MethodSignature> overridden = new ArrayList<>();
+    final Set<ClassType> visited = new HashSet<>();
+    final Deque<ClassType> worklist = new ArrayDeque<>();
+    worklist.add(method.getDeclClassType());
+    while (!worklist.isEmpty()) {
+      final TypeHierarchyIndex.Supertypes supertypes =
+          typeHierarchy.getSupertypes(worklist.poll());
+      if (supertypes == null) {
+        continue;
+      }
+      for (ClassType supertype : supertypes.getAll()) {
+        if (!visited.add(supertype)) {
+          continue;
+        }
+        final Declaration declaration = declarers.get(supertype);
+        if (declaration != null) {
+          overridden.add(declaration.method);
+        } else {
+          worklist.add(supertype);
+        }
+      }
+    }
+    return overridden;
+  }
+}
@@ -0,0 +1,133 @@
+package magpiebridge.jimplelsp.index;
+
+import de.upb.swt.soot.core.signatures.Signature;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import magpiebridge.jimplelsp.resolver.PackedPositions;
+import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+/**
+ * The ReferenceIndex is an inverted index over the whole workspace: it maps a Signature to all of
+ * its occurences in the workspace's documents. It is updated per document, so a references query
+ * is a lookup instead of a scan over all documents.
+ *
+ * <p>The ranges are kept packed (see PackedPositions) - the Location objects are created only for
+ * the response.
+ *
+ * @see SignaturePositionResolver
+ */
+public class ReferenceIndex {
+
+  // signature -> uri -> packed ranges of occurences in that document: start0, end0, start1, ..
+  @Nonnull
+  private final Map<Signature, Map<String, long[]>> occurences = new ConcurrentHashMap<>();
+
+  // uri -> signatures that occur in that document (to remove outdated occurences on update)
+  @Nonnull private final Map<String, Set<Signature>> documentSignatures = new HashMap<>();
+
+  /** replaces the occurences of the given document by the ones found by the given resolver. */
+  public void update(@Nonnull String uri, @Nonnull SignaturePositionResolver resolver) {
+    update(uri, collectOccurences(resolver));
+  }
+
+  /** replaces the occurences of the given document. */
+  public synchronized void update(
+      @Nonnull String uri, @Nonnull Map<Signature, List<Range>> documentOccurences) {
+    remove(uri);
+    documentOccurences.forEach(
+        (sig, ranges) ->
+            occurences
+                .computeIfAbsent(sig, k -> new ConcurrentHashMap<>())
+                .put(uri, pack(ranges)));
+    documentSignatures.put(uri, new HashSet<>(documentOccurences.keySet()));
+  }
+
+  /**
+   * adds the occurences of the given document only if the index holds no (e.g. newer) occurences of
+   * that document yet.
+   */
+  public synchronized void updateIfAbsent(
+      @Nonnull String uri, @Nonnull Map<Signature, List<Range>> documentOccurences) {
+    if (!contains(uri)) {
+      update(uri, documentOccurences);
+    }
+  }
+
+  @Nonnull
+  private static long[] pack(@Nonnull List<Range> ranges) {
+    final long[] packed = new long[ranges.size() * 2];
+    int i = 0;
+    for (Range range : ranges) {
+      packed[i++] = PackedPositions.pack(range.getStart());
+      packed[i++] = PackedPositions.pack(range.getEnd());
+    }
+    return packed;
+  }
+
+  /** @return the occurences found by the resolver grouped by their Signature */
+  @Nonnull
+  public static Map<Signature, List<Range>> collectOccurences(
+      @Nonnull SignaturePositionResolver resolver) {
+    final Map<Signature, List<Range>> documentOccurences = new LinkedHashMap<>();
+    resolver.forEachOccurence(
+        (sig, range) ->
+            documentOccurences.computeIfAbsent(sig, k -> new ArrayList<>()).add(range));
+    return documentOccurences;
+  }
+
+  /** removes all occurences of the given document. */
+  public synchronized void remove(@Nonnull String uri) {
+    final Set<Signature> signatures = documentSignatures.remove(uri);
+    if (signatures == null) {
+      return;
+    }
+    for (Signature sig : signatures) {
+      final Map<String, long[]> sigOccurences = occurences.get(sig);
+      if (sigOccurences != null) {
+        sigOccurences.remove(uri);
+        if (sigOccurences.isEmpty()) {
+          occurences.remove(sig);
+        }
+      }
+    }
+  }
+
+  public synchronized boolean contains(@Nonnull String uri) {
+    return documentSignatures.containsKey(uri);
+  }
+
+  /** @return the Locations of all occurences of the given Signature in the workspace */
+  @Nonnull
+  public List<Location> getReferences(@Nonnull Signature signature) {
+    return getReferences(signature, null);
+  }
+
+  /**
+   * @param cancelChecker is checked per document
+   * @return the Locations of all occurences of the given Signature in the workspace
+   */
+  @Nonnull
+  public List<Location> getReferences(
+      @Nonnull Signature signature, @Nullable CancelChecker cancelChecker) {
+    final Map<String, long[]> sigOccurences = occurences.get(signature);
+    if (sigOccurences == null) {
+      return new ArrayList<>();
+    }
+    final List<Location> locations = new ArrayList<>();
+    sigOccurences.forEach(
+        (uri, ranges) -> {
+          if (cancelChecker != null) {
+            cancelChecker.checkCanceled();
+          }
+          for (int i = 0; i < ranges.length; i += 2) {
+            locations.add(new Location(uri, PackedPositions.toRange(ranges[i], ranges[i + 1])));
+          }
+        });
+    return locations;
+  }
+}
@@ -0,0 +1,471 @@
+package magpiebridge.jimplelsp.index;
+
+import de.upb.swt.soot.core.signatures.FieldSignature;
+import de.upb.swt.soot.core.signatures.MethodSignature;
+import de.upb.swt.soot.core.signatures.Signature;
+import de.upb.swt.soot.core.types.ClassType;
+import java.util.*;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import magpiebridge.jimplelsp.PersistentMap;
+import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.SymbolKind;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+/**
+ * The SymbolIndex holds the declared classes, methods and fields of the workspace for the
+ * workspace/symbol request. Symbols are found via an n-gram index: every symbol is listed under
+ * the trigrams of its (lowercase) name, the bigrams at the start of each camel-case hump and the
+ * trigrams of its hump initials. A query only looks at the symbols which share n-grams with it,
+ * ranks them (exact > prefix > camel-case > substring > subsequence > similar) and keeps the best
+ * ones up to the given limit.
+ *
+ * <p>It is updated per document like the ReferenceIndex. Updates are serialized and publish a new
+ * immutable state (PersistentMaps which share the unchanged postings), so a search reads the
+ * current state without locking and never waits for the indexing of the workspace.
+ *
+ * @see ReferenceIndex
+ */
+public class SymbolIndex {
+
+  private static final int SCORE_EXACT = 1000;
+  private static final int SCORE_PREFIX = 900;
+  private static final int SCORE_CAMELCASE = 800;
+  private static final int SCORE_SUBSTRING = 700;
+  private static final int SCORE_SUBSEQUENCE = 500;
+  private static final int SCORE_SIMILAR = 300;
+  // shorter queries have too few n-grams to tell whether a name is similar
+  private static final int MIN_SIMILAR_QUERY_LENGTH = 4;
+  // check for cancellation every 1024 scored symbols
+  private static final int CANCEL_CHECK_INTERVAL = 1023;
+
+  /** A declared class, method or field. */
+  private static final class Symbol {
+    @Nonnull final String name;
+    // lowercase (simple) name which is matched against the query
+    @Nonnull final String matchName;
+    // lowercase first character of each camel-case hump
+    @Nonnull final String initials;
+    @Nonnull final int[] humpStarts;
+    @Nonnull final SymbolKind kind;
+    @Nullable final String containerName;
+    @Nonnull final String uri;
+    @Nonnull final Range range;
+
+    private Symbol(
+        @Nonnull String name,
+        @Nonnull String simpleName,
+        @Nonnull SymbolKind kind,
+        @Nullable String containerName,
+        @Nonnull String uri,
+        @Nonnull Range range) {
+      this.name = name;
+      this.matchName = simpleName.toLowerCase();
+      this.humpStarts = humpStarts(simpleName);
+      final StringBuilder sb = new StringBuilder(humpStarts.length);
+      for (int humpStart : humpStarts) {
+        sb.append(matchName.charAt(humpStart));
+      }
+      this.initials = sb.toString();
+      this.kind = kind;
+      this.containerName = containerName;
+      this.uri = uri;
+      this.range = range;
+    }
+
+    @Nonnull
+    SymbolInformation toSymbolInformation() {
+      return new SymbolInformation(name, kind, new Location(uri, range), containerName);
+    }
+  }
+
+  private static final class ScoredSymbol {
+    @Nonnull final Symbol symbol;
+    final int score;
+
+    private ScoredSymbol(@Nonnull Symbol symbol, int score) {
+      this.symbol = symbol;
+      this.score = score;
+    }
+  }
+
+  // worst first, so the heap of the best results can drop its head
+  private static final Comparator<ScoredSymbol> RANKING =
+      Comparator.<ScoredSymbol>comparingInt(s -> s.score)
+          .thenComparing(s -> s.symbol.name, Comparator.reverseOrder());
+
+  /** An immutable state of the index. */
+  private static final class State {
+    private static final State EMPTY = new State(PersistentMap.empty(), PersistentMap.empty());
+
+    // n-gram -> symbols (each symbol is mapped to itself)
+    @Nonnull final PersistentMap<Long, PersistentMap<Symbol, Symbol>> postings;
+
+    // uri -> symbols declared in that document (to remove outdated symbols on update)
+    @Nonnull final PersistentMap<String, List<Symbol>> documentSymbols;
+
+    private State(
+        @Nonnull PersistentMap<Long, PersistentMap<Symbol, Symbol>> postings,
+        @Nonnull PersistentMap<String, List<Symbol>> documentSymbols) {
+      this.postings = postings;
+      this.documentSymbols = documentSymbols;
+    }
+  }
+
+  // readers use the current state without locking, writers publish a new one (synchronized)
+  @Nonnull private volatile State state = State.EMPTY;
+
+  /** replaces the symbols of the given document by the ones found by the given resolver. */
+  public void update(@Nonnull String uri, @Nonnull SignaturePositionResolver resolver) {
+    update(uri, collectDeclarations(resolver));
+  }
+
+  /** replaces the symbols of the given document. */
+  public synchronized void update(
+      @Nonnull String uri, @Nonnull Map<Signature, Range> declarations) {
+    final State current = state;
+    PersistentMap<Long, PersistentMap<Symbol, Symbol>> postings =
+        withoutSymbols(current.postings, current.documentSymbols.get(uri));
+    final List<Symbol> symbols = new ArrayList<>(declarations.size());
+    for (Map.Entry<Signature, Range> declaration : declarations.entrySet()) {
+      final Symbol symbol = createSymbol(uri, declaration.getKey(), declaration.getValue());
+      if (symbol == null) {
+        continue;
+      }
+      symbols.add(symbol);
+      for (long gram : grams(symbol)) {
+        final PersistentMap<Symbol, Symbol> gramSymbols = postings.get(gram);
+        postings =
+            postings.plus(
+                gram,
+                (gramSymbols == null ? PersistentMap.<Symbol, Symbol>empty() : gramSymbols)
+                    .plus(symbol, symbol));
+      }
+    }
+    state = new State(postings, current.documentSymbols.plus(uri, symbols));
+  }
+
+  /**
+   * adds the symbols of the given document only if the index holds no (e.g. newer) symbols of that
+   * document yet.
+   */
+  public synchronized void updateIfAbsent(
+      @Nonnull String uri, @Nonnull Map<Signature, Range> declarations) {
+    if (!state.documentSymbols.containsKey(uri)) {
+      update(uri, declarations);
+    }
+  }
+
+  /** @return the declarations found by the resolver in order of their position */
+  @Nonnull
+  public static Map<Signature, Range> collectDeclarations(
+      @Nonnull SignaturePositionResolver resolver) {
+    final Map<Signature, Range> declarations = new LinkedHashMap<>();
+    resolver.forEachDeclaration(declarations::putIfAbsent);
+    return declarations;
+  }
+
+  /** removes all symbols of the given document. */
+  public synchronized void remove(@Nonnull String uri) {
+    final State current = state;
+    final List<Symbol> symbols = current.documentSymbols.get(uri);
+    if (symbols == null) {
+      return;
+    }
+    state =
+        new State(withoutSymbols(current.postings, symbols), current.documentSymbols.minus(uri));
+  }
+
+  /** @return the postings without the given symbols */
+  @Nonnull
+  private static PersistentMap<Long, PersistentMap<Symbol, Symbol>> withoutSymbols(
+      @Nonnull PersistentMap<Long, PersistentMap<Symbol, Symbol>> postings,
+      @Nullable List<Symbol> symbols) {
+    if (symbols == null) {
+      return postings;
+    }
+    for (Symbol symbol : symbols) {
+      for (long gram : grams(symbol)) {
+        final PersistentMap<Symbol, Symbol> gramSymbols = postings.get(gram);
+        if (gramSymbols != null) {
+          final PersistentMap<Symbol, Symbol> remaining = gramSymbols.minus(symbol);
+          postings = remaining.isEmpty() ? postings.minus(gram) : postings.plus(gram, remaining);
+        }
+      }
+    }
+    return postings;
+  }
+
+  /** @return the Range of the declaration of the given class in the given document */
+  @Nullable
+  public Range getClassDeclaration(@Nonnull String uri, @Nonnull ClassType classType) {
+    final List<Symbol> symbols = state.documentSymbols.get(uri);
+    if (symbols == null) {
+      return null;
+    }
+    final String fqName = classType.getFullyQualifiedName();
+    for (Symbol symbol : symbols) {
+      if (symbol.kind == SymbolKind.Class && symbol.name.equals(fqName)) {
+        return symbol.range;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param query needs at least two characters
+   * @param limit maximum number of returned symbols
+   * @param kinds the SymbolKinds which are of interest
+   * @return the best matching symbols - best match first
+   */
+  @Nonnull
+  public List<SymbolInformation> search(
+      @Nonnull String query, int limit, @Nonnull Collection<SymbolKind> kinds) {
+    return search(query, limit, kinds, null);
+  }
+
+  /**
+   * @param cancelChecker is checked regularly while collecting the candidates
+   * @see #search(String, int, Collection)
+   */
+  @Nonnull
+  public List<SymbolInformation> search(
+      @Nonnull String query,
+      int limit,
+      @Nonnull Collection<SymbolKind> kinds,
+      @Nullable CancelChecker cancelChecker) {
+    final String lowerQuery = query.trim().toLowerCase();
+    if (lowerQuery.length() < 2 || limit <= 0) {
+      return Collections.emptyList();
+    }
+
+    // count the n-grams each candidate shares with the query
+    final Set<Long> queryGrams = new HashSet<>();
+    // matches hump starts and initials
+    queryGrams.add(gram(lowerQuery, 0, 2));
+    addTrigrams(queryGrams, lowerQuery);
+    final PersistentMap<Long, PersistentMap<Symbol, Symbol>> postings = state.postings;
+    final Map<Symbol, int[]> sharedGrams = new HashMap<>();
+    for (Long gram : queryGrams) {
+      if (cancelChecker != null) {
+        cancelChecker.checkCanceled();
+      }
+      final PersistentMap<Symbol, Symbol> gramSymbols = postings.get(gram);
+      if (gramSymbols != null) {
+        gramSymbols.forEach(
+            (symbol, same) -> sharedGrams.computeIfAbsent(symbol, k -> new int[1])[0]++);
+      }
+    }
+
+    final PriorityQueue<ScoredSymbol> best = new PriorityQueue<>(limit + 1, RANKING);
+    final int[] scored = new int[1];
+    sharedGrams.forEach(
+        (symbol, shared) -> {
+          if (cancelChecker != null && (scored[0]++ & CANCEL_CHECK_INTERVAL) == 0) {
+            cancelChecker.checkCanceled();
+          }
+          if (!kinds.contains(symbol.kind)) {
+            return;
+          }
+          final int score = score(symbol, lowerQuery, shared[0], queryGrams.size());
+          if (score <= 0) {
+            return;
+          }
+          best.add(new ScoredSymbol(symbol, score));
+          if (best.size() > limit) {
+            best.poll();
+          }
+        });
+
+    final SymbolInformation[] result = new SymbolInformation[best.size()];
+    for (int i = result.length - 1; i >= 0; i--) {
+      result[i] = best.poll().symbol.toSymbolInformation();
+    }
+    return Arrays.asList(result);
+  }
+
+  /** @return the score of the symbol for the query or 0 if it does not match */
+  private static int score(
+      @Nonnull Symbol symbol, @Nonnull String query, int sharedGrams, int queryGrams) {
+    final String name = symbol.matchName;
+    final int idx = name.indexOf(query);
+    int score;
+    if (name.equals(query)) {
+      score = SCORE_EXACT;
+    } else if (name.startsWith(query)) {
+      score = SCORE_PREFIX;
+    } else if (symbol.initials.startsWith(query) || matchesHumps(symbol, query)) {
+      score = SCORE_CAMELCASE;
+    } else if (idx >= 0) {
+      score = SCORE_SUBSTRING - Math.min(idx, 99);
+    } else {
+      final int gaps = subsequenceGaps(name, query);
+      if (gaps >= 0) {
+        score = SCORE_SUBSEQUENCE - Math.min(gaps, 99);
+      } else if (query.length() >= MIN_SIMILAR_QUERY_LENGTH && 2 * sharedGrams >= queryGrams) {
+        // e.g. a typo: at least half of the query's n-grams are there
+        score = SCORE_SIMILAR * sharedGrams / queryGrams;
+      } else {
+        return 0;
+      }
+    }
+    // prefer shorter names i.e. names which are covered better by the query
+    score -= Math.min(Math.abs(name.length() - query.length()), 49);
+    if (symbol.kind == SymbolKind.Class) {
+      score += 50;
+    }
+    return score;
+  }
+
+  /**
+   * @return true if the query is a concatenation of prefixes of consecutive humps of the symbol -
+   *     e.g. "strbui" matches "StringBuilder". Humps may be skipped: "sbuil" matches as well.
+   */
+  private static boolean matchesHumps(@Nonnull Symbol symbol, @Nonnull String query) {
+    return matchesHumps(symbol.matchName, symbol.humpStarts, 0, query, 0);
+  }
+
+  private static boolean matchesHumps(
+      @Nonnull String name, @Nonnull int[] humpStarts, int hump, @Nonnull String query, int q) {
+    if (q == query.length()) {
+      return true;
+    }
+    for (int h = hump; h < humpStarts.length; h++) {
+      final int humpEnd = h + 1 < humpStarts.length ? humpStarts[h + 1] : name.length();
+      // match as many characters as possible of this hump - back off if the rest does not match
+      int length = 0;
+      while (q + length < query.length()
+          && humpStarts[h] + length < humpEnd
+          && name.charAt(humpStarts[h] + length) == query.charAt(q + length)) {
+        length++;
+      }
+      for (; length > 0; length--) {
+        if (matchesHumps(name, humpStarts, h + 1, query, q + length)) {
+          return true;
+        }
+      }
+      if (h == hump && hump == 0) {
+        // the query has to start with the first hump
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of skipped characters if the query is a subsequence of the name (starting
+   *     at its first character) or -1 otherwise
+   */
+  private static int subsequenceGaps(@Nonnull String name, @Nonnull String query) {
+    if (name.isEmpty() || name.charAt(0) != query.charAt(0)) {
+      return -1;
+    }
+    int gaps = 0;
+    int n = 0;
+    for (int q = 0; q < query.length(); q++) {
+      while (n < name.length() && name.charAt(n) != query.charAt(q)) {
+        n++;
+        gaps++;
+      }
+      if (n == name.length()) {
+        return -1;
+      }
+      n++;
+    }
+    return gaps;
+  }
+
+  @Nullable
+  private static Symbol createSymbol(
+      @Nonnull String uri, @Nonnull Signature sig, @Nonnull Range range) {
+    if (sig instanceof ClassType) {
+      final String fqName = ((ClassType) sig).getFullyQualifiedName();
+      final int dotIdx = fqName.lastIndexOf('.');
+      return new Symbol(
+          fqName,
+          fqName.substring(dotIdx + 1),
+          SymbolKind.Class,
+          dotIdx < 0 ? null : fqName.substring(0, dotIdx),
+          uri,
+          range);
+    } else if (sig instanceof MethodSignature) {
+      final MethodSignature methodSig = (MethodSignature) sig;
+      return new Symbol(
+          methodSig.getName(),
+          methodSig.getName(),
+          SymbolKind.Method,
+          methodSig.getDeclClassType().getFullyQualifiedName(),
+          uri,
+          range);
+    } else if (sig instanceof FieldSignature) {
+      final FieldSignature fieldSig = (FieldSignature) sig;
+      return new Symbol(
+          fieldSig.getName(),
+          fieldSig.getName(),
+          SymbolKind.Field,
+          fieldSig.getDeclClassType().getFullyQualifiedName(),
+          uri,
+          range);
+    }
+    return null;
+  }
+
+  /** @return the offsets of the camel-case humps i.e. "getFooBar_baz" -> [0, 3, 6, 10] */
+  @Nonnull
+  private static int[] humpStarts(@Nonnull String name) {
+    final int[] starts = new int[name.length()];
+    int count = 0;
+    for (int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      if (!Character.isLetterOrDigit(c)) {
+        continue;
+      }
+      if (i == 0) {
+        starts[count++] = i;
+        continue;
+      }
+      final char prev = name.charAt(i - 1);
+      if (!Character.isLetterOrDigit(prev)
+          || (Character.isUpperCase(c) && !Character.isUpperCase(prev))
+          || (Character.isDigit(c) && !Character.isDigit(prev))) {
+        starts[count++] = i;
+      }
+    }
+    return Arrays.copyOf(starts, count);
+  }
+
+  /** @return the n-grams under which the symbol is listed */
+  @Nonnull
+  private static Set<Long> grams(@Nonnull Symbol symbol) {
+    final Set<Long> grams = new HashSet<>();
+    addTrigrams(grams, symbol.matchName);
+    addTrigrams(grams, symbol.initials);
+    for (int humpStart : symbol.humpStarts) {
+      if (humpStart + 2 <= symbol.matchName.length()) {
+        grams.add(gram(symbol.matchName, humpStart, 2));
+      }
+    }
+    if (symbol.initials.length() >= 2) {
+      grams.add(gram(symbol.initials, 0, 2));
+    }
+    return grams;
+  }
+
+  private static void addTrigrams(@Nonnull Set<Long> grams, @Nonnull String str) {
+    for (int i = 0; i + 3 <= str.length(); i++) {
+      grams.add(gram(str, i, 3));
+    }
+  }
+
+  /** packs the length and the (up to three) characters of the n-gram into a long. */
+  private static long gram(@Nonnull String str, int from, int length) {
+    long gram = length;
+    for (int i = from; i < from + length; i++) {
+      gram = (gram << 16) | str.charAt(i);
+    }
+    return gram;
+  }
+}
@@ -0,0 +1,240 @@
+package magpiebridge.jimplelsp.index;
+
+import de.upb.swt.soot.core.types.ClassType;
+import java.util.*;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import magpiebridge.jimplelsp.resolver.SignatureInterner;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+/**
+ * The TypeHierarchyIndex holds the direct supertypes of each class declared in the workspace and
+ * the inverted edges i.e. the direct subtypes of each (possibly not declared e.g. library) type. It
+ * is updated per document and only touches the edges of a class if its extends or implements
+ * clauses changed - so queries don't need to compute a hierarchy over the whole view and take time
+ * proportional to the size of their answer.
+ */
+public class TypeHierarchyIndex {
+
+  /** The declared supertypes of a class. */
+  public static final class Supertypes {
+    @Nullable private final ClassType superclass;
+    @Nonnull private final Set<ClassType> interfaces;
+
+    public Supertypes(@Nullable ClassType superclass, @Nonnull Collection<ClassType> interfaces) {
+      this.superclass = superclass == null ? null : SignatureInterner.intern(superclass);
+      final Set<ClassType> internedInterfaces = new LinkedHashSet<>();
+      for (ClassType anInterface : interfaces) {
+        internedInterfaces.add(SignatureInterner.intern(anInterface));
+      }
+      this.interfaces = Collections.unmodifiableSet(internedInterfaces);
+    }
+
+    @Nullable
+    public ClassType getSuperclass() {
+      return superclass;
+    }
+
+    @Nonnull
+    public Set<ClassType> getInterfaces() {
+      return interfaces;
+    }
+
+    /** @return the superclass (if any) followed by the interfaces */
+    @Nonnull
+    public List<ClassType> getAll() {
+      final List<ClassType> all = new ArrayList<>(interfaces.size() + 1);
+      if (superclass != null) {
+        all.add(superclass);
+      }
+      all.addAll(interfaces);
+      return all;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Supertypes)) {
+        return false;
+      }
+      final Supertypes that = (Supertypes) o;
+      return Objects.equals(superclass, that.superclass) && interfaces.equals(that.interfaces);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(superclass, interfaces);
+    }
+  }
+
+  // declared class -> its direct supertypes
+  @Nonnull private final Map<ClassType, Supertypes> supertypes = new HashMap<>();
+  // type -> the declared classes which directly extend/implement it
+  @Nonnull private final Map<ClassType, Set<ClassType>> directSubtypes = new HashMap<>();
+  // uri <-> the class declared in that document
+  @Nonnull private final Map<String, ClassType> documentClassTypes = new HashMap<>();
+  @Nonnull private final Map<ClassType, String> classTypeUris = new HashMap<>();
+
+  /** replaces the class declared in the given document. */
+  public synchronized void update(
+      @Nonnull String uri,
+      @Nonnull ClassType declaredClassType,
+      @Nonnull Supertypes classSupertypes) {
+    final ClassType classType = SignatureInterner.intern(declaredClassType);
+    final ClassType previous = documentClassTypes.get(uri);
+    if (previous != null && !previous.equals(classType)) {
+      remove(uri);
+    }
+    documentClassTypes.put(uri, classType);
+    classTypeUris.put(classType, uri);
+
+    final Supertypes previousSupertypes = supertypes.put(classType, classSupertypes);
+    if (classSupertypes.equals(previousSupertypes)) {
+      // extends/implements did not change: nothing else to do
+      return;
+    }
+    if (previousSupertypes != null) {
+      removeSubtypeEdges(classType, previousSupertypes);
+    }
+    for (ClassType supertype : classSupertypes.getAll()) {
+      directSubtypes.computeIfAbsent(supertype, k -> new LinkedHashSet<>()).add(classType);
+    }
+  }
+
+  /**
+   * adds the class of the given document only if the index holds no (e.g. newer) information about
+   * that document yet.
+   */
+  public synchronized void updateIfAbsent(
+      @Nonnull String uri, @Nonnull ClassType classType, @Nonnull Supertypes classSupertypes) {
+    if (!contains(uri)) {
+      update(uri, classType, classSupertypes);
+    }
+  }
+
+  /** removes the class declared in the given document. */
+  public synchronized void remove(@Nonnull String uri) {
+    final ClassType classType = documentClassTypes.remove(uri);
+    if (classType == null) {
+      return;
+    }
+    classTypeUris.remove(classType, uri);
+    final Supertypes classSupertypes = supertypes.remove(classType);
+    if (classSupertypes != null) {
+      removeSubtypeEdges(classType, classSupertypes);
+    }
+  }
+
+  private void removeSubtypeEdges(
+      @Nonnull ClassType classType, @Nonnull Supertypes classSupertypes) {
+    for (ClassType supertype : classSupertypes.getAll()) {
+      final Set<ClassType> subtypes = directSubtypes.get(supertype);
+      if (subtypes != null) {
+        subtypes.remove(classType);
+        if (subtypes.isEmpty()) {
+          directSubtypes.remove(supertype);
+        }
+      }
+    }
+  }
+
+  public synchronized boolean contains(@Nonnull String uri) {
+    return documentClassTypes.containsKey(uri);
+  }
+
+  /** @return whether the given class is declared in the workspace */
+  public synchronized boolean isDeclared(@Nonnull ClassType classType) {
+    return supertypes.containsKey(classType);
+  }
+
+  /** @return the uri of the document which declares the given class */
+  @Nullable
+  public synchronized String getUri(@Nonnull ClassType classType) {
+    return classTypeUris.get(classType);
+  }
+
+  /** @return the class declared in the given document */
+  @Nullable
+  public synchronized ClassType getClassType(@Nonnull String uri) {
+    return documentClassTypes.get(uri);
+  }
+
+  /** @return the direct supertypes of the given class or null if it is not declared */
+  @Nullable
+  public synchronized Supertypes getSupertypes(@Nonnull ClassType classType) {
+    return supertypes.get(classType);
+  }
+
+  /**
+   * @return whether subtype (transitively) extends or implements supertype - walks up the declared
+   *     supertypes of subtype
+   */
+  public synchronized boolean isSubtype(@Nonnull ClassType subtype, @Nonnull ClassType supertype) {
+    final Set<ClassType> visited = new HashSet<>();
+    final Deque<ClassType> worklist = new ArrayDeque<>();
+    worklist.add(subtype);
+    while (!worklist.isEmpty()) {
+      final Supertypes classSupertypes = supertypes.get(worklist.poll());
+      if (classSupertypes == null) {
+        continue;
+      }
+      for (ClassType direct : classSupertypes.getAll()) {
+        if (direct.equals(supertype)) {
+          return true;
+        }
+        if (visited.add(direct)) {
+          worklist.add(direct);
+        }
+      }
+    }
+    return false;
+  }
+
+  /** @return the declared classes which directly extend or implement the given type */
+  @Nonnull
+  public synchronized List<ClassType> getDirectSubtypes(@Nonnull ClassType classType) {
+    final Set<ClassType> subtypes = directSubtypes.get(classType);
+    return subtypes == null ? Collections.emptyList() : new ArrayList<>(subtypes);
+  }
+
+  /**
+   * @return all declared classes which (transitively) extend or implement the given type - ordered
+   *     by their distance to it
+   */
+  @Nonnull
+  public Set<ClassType> getSubtypes(@Nonnull ClassType classType) {
+    return getSubtypes(classType, null);
+  }
+
+  /**
+   * @param cancelChecker is checked per visited type
+   * @return all declared classes which (transitively) extend or implement the given type - ordered
+   *     by their distance to it
+   */
+  @Nonnull
+  public synchronized Set<ClassType> getSubtypes(
+      @Nonnull ClassType classType, @Nullable CancelChecker cancelChecker) {
+    final Set<ClassType> subtypes = new LinkedHashSet<>();
+    final Deque<ClassType> worklist = new ArrayDeque<>();
+    worklist.add(classType);
+    while (!worklist.isEmpty()) {
+      if (cancelChecker != null) {
+        cancelChecker.checkCanceled();
+      }
+      final Set<ClassType> direct = directSubtypes.get(worklist.poll());
+      if (direct == null) {
+        continue;
+      }
+      for (ClassType subtype : direct) {
+        if (subtypes.add(subtype)) {
+          worklist.add(subtype);
+        }
+      }
+    }
+    // hint: a (broken) cyclic hierarchy must not list the type as its own subtype
+    subtypes.remove(classType);
+    return subtypes;
+  }
+}
@@ -27,11 +27,10 @@ public class JimpleSymbolProvider {
       int limit) {
     final List<SymbolKind> clientSupportedSymbolKinds = symbolKind.getValueSet();
 
-    // TODO: implement limit
-
     if (clientSupportedSymbolKinds.contains(SymbolKind.Class)) {
       // retrieve classes
-      if (query == null || clazz.getName().toLowerCase().contains(query)) {
+      if (resultList.size() < limit
+          && (query == null || clazz.getName().toLowerCase().contains(query))) {
         Location location =
             resolver.findFirstMatchingSignature(clazz.getType(), clazz.getPosition());
         resultList.add(new SymbolInformation(clazz.getName(), SymbolKind.Class, location));
@@ -41,6 +40,9 @@ public class JimpleSymbolProvider {
     if (clientSupportedSymbolKinds.contains(SymbolKind.Method)) {
       // retrieve methods
       for (SootMethod method : clazz.getMethods()) {
+        if (resultList.size() >= limit) {
+          return;
+        }
         if (query == null || method.getName().toLowerCase().contains(query)) {
           // find first signature matching
           Location location =
@@ -53,6 +55,9 @@ public class JimpleSymbolProvider {
     if (clientSupportedSymbolKinds.contains(SymbolKind.Field)) {
       // retrieve fields
       for (SootField field : clazz.getFields()) {
+        if (resultList.size() >= limit) {
+          return;
+        }
         if (query == null || field.getName().toLowerCase().contains(query)) {
           Location location =
               resolver.findFirstMatchingSignature(field.getSignature(), field.getPosition());
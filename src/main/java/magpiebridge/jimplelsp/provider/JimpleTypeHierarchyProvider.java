@@ -0,0 +1,139 @@
+package magpiebridge.jimplelsp.provider;
+
+import com.google.gson.JsonElement;
+import de.upb.swt.soot.core.types.ClassType;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import magpiebridge.jimplelsp.index.SymbolIndex;
+import magpiebridge.jimplelsp.index.TypeHierarchyIndex;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SymbolKind;
+import org.eclipse.lsp4j.TypeHierarchyDirection;
+import org.eclipse.lsp4j.TypeHierarchyItem;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+/**
+ * The JimpleTypeHierarchyProvider creates the items of the TypeHierarchy requests from the
+ * TypeHierarchyIndex. A request expands a single level regardless of the requested amount - the
+ * parents/children of the outermost items stay unresolved (null) until the client asks for them
+ * via typeHierarchy/resolve, so a huge subtype tree is never built at once.
+ */
+public class JimpleTypeHierarchyProvider {
+  // guards against clients which ask for everything at once
+  private static final int MAX_RESOLVE_LEVELS = 1;
+
+  @Nonnull private final TypeHierarchyIndex typeHierarchy;
+  @Nonnull private final SymbolIndex symbolIndex;
+
+  public JimpleTypeHierarchyProvider(
+      @Nonnull TypeHierarchyIndex typeHierarchy, @Nonnull SymbolIndex symbolIndex) {
+    this.typeHierarchy = typeHierarchy;
+    this.symbolIndex = symbolIndex;
+  }
+
+  /**
+   * @param levels amount of levels that are expanded in the given direction - at most one
+   * @return the item of the given class or null if the class is not declared in the workspace
+   */
+  @Nullable
+  public TypeHierarchyItem createItem(
+      @Nonnull ClassType classType,
+      int levels,
+      @Nullable TypeHierarchyDirection direction,
+      @Nonnull CancelChecker cancelChecker) {
+    final String uri = typeHierarchy.getUri(classType);
+    if (uri == null) {
+      // e.g. a library class
+      return null;
+    }
+    Range range = symbolIndex.getClassDeclaration(uri, classType);
+    if (range == null) {
+      range = new Range(new Position(0, 0), new Position(0, 0));
+    }
+
+    final String fqName = classType.getFullyQualifiedName();
+    final int dotIdx = fqName.lastIndexOf('.');
+    final TypeHierarchyItem item = new TypeHierarchyItem();
+    item.setName(fqName.substring(dotIdx + 1));
+    if (dotIdx >= 0) {
+      item.setDetail(fqName.substring(0, dotIdx));
+    }
+    item.setKind(SymbolKind.Class);
+    item.setUri(uri);
+    item.setRange(range);
+    item.setSelectionRange(range);
+    item.setData(fqName);
+    expand(item, classType, levels, direction, cancelChecker);
+    return item;
+  }
+
+  /**
+   * expands the levels of an item which was sent to the client before.
+   *
+   * @return the expanded item or null if its class is gone in the meantime
+   */
+  @Nullable
+  public TypeHierarchyItem resolve(
+      @Nonnull TypeHierarchyItem item,
+      int levels,
+      @Nullable TypeHierarchyDirection direction,
+      @Nonnull CancelChecker cancelChecker) {
+    final ClassType classType = typeHierarchy.getClassType(item.getUri());
+    if (classType == null || !classType.getFullyQualifiedName().equals(getData(item))) {
+      return null;
+    }
+    expand(item, classType, levels, direction, cancelChecker);
+    return item;
+  }
+
+  private void expand(
+      @Nonnull TypeHierarchyItem item,
+      @Nonnull ClassType classType,
+      int levels,
+      @Nullable TypeHierarchyDirection direction,
+      @Nonnull CancelChecker cancelChecker) {
+    cancelChecker.checkCanceled();
+    final int remainingLevels = Math.min(levels, MAX_RESOLVE_LEVELS) - 1;
+    if (remainingLevels < 0) {
+      return;
+    }
+    if (direction != TypeHierarchyDirection.Children) {
+      final TypeHierarchyIndex.Supertypes supertypes = typeHierarchy.getSupertypes(classType);
+      final List<TypeHierarchyItem> parents = new ArrayList<>();
+      if (supertypes != null) {
+        for (ClassType supertype : supertypes.getAll()) {
+          final TypeHierarchyItem parent =
+              createItem(supertype, remainingLevels, TypeHierarchyDirection.Parents, cancelChecker);
+          if (parent != null) {
+            parents.add(parent);
+          }
+        }
+      }
+      item.setParents(parents);
+    }
+    if (direction != TypeHierarchyDirection.Parents) {
+      final List<TypeHierarchyItem> children = new ArrayList<>();
+      for (ClassType subtype : typeHierarchy.getDirectSubtypes(classType)) {
+        final TypeHierarchyItem child =
+            createItem(subtype, remainingLevels, TypeHierarchyDirection.Children, cancelChecker);
+        if (child != null) {
+          children.add(child);
+        }
+      }
+      item.setChildren(children);
+    }
+  }
+
+  /** @return the fully qualified class name stored in the item - Gson deserializes it lazily */
+  @Nullable
+  private static String getData(@Nonnull TypeHierarchyItem item) {
+    final Object data = item.getData();
+    if (data instanceof JsonElement && ((JsonElement) data).isJsonPrimitive()) {
+      return ((JsonElement) data).getAsString();
+    }
+    return data instanceof String ? (String) data : null;
+  }
+}
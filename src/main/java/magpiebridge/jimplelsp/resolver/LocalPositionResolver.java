@@ -3,9 +3,6 @@ package magpiebridge.jimplelsp.resolver;
 import de.upb.swt.soot.core.frontend.ResolveException;
 import de.upb.swt.soot.core.jimple.Jimple;
 import de.upb.swt.soot.core.model.Position;
-import de.upb.swt.soot.core.model.SootClass;
-import de.upb.swt.soot.core.model.SootMethod;
-import de.upb.swt.soot.core.signatures.MethodSubSignature;
 import de.upb.swt.soot.core.types.Type;
 import de.upb.swt.soot.jimple.JimpleBaseListener;
 import de.upb.swt.soot.jimple.JimpleParser;
@@ -16,6 +13,7 @@ import java.util.*;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import magpiebridge.jimplelsp.Util;
+import magpiebridge.jimplelsp.document.ParseTreeMultiplexer;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.apache.commons.lang3.tuple.Pair;
@@ -30,11 +28,83 @@ import org.eclipse.lsp4j.jsonrpc.messages.Either;
 public class LocalPositionResolver {
   @Nonnull final Path path;
 
-  @Nonnull
-  private final Map<MethodSubSignature, List<Pair<Position, String>>> localsOfMethod =
-      new HashMap<>();
+  // the methods of the file in order of their position
+  @Nonnull private final List<MethodLocals> methods = new ArrayList<>();
+
+  /**
+   * The locals of a method: their occurences sorted by position (packed, see PackedPositions) and
+   * grouped by their name.
+   */
+  private static final class MethodLocals {
+    private final long start;
+    private final long end;
+    @Nonnull private final long[] starts;
+    @Nonnull private final long[] ends;
+    @Nonnull private final String[] names;
+    // local name -> indices of its occurences in order of their position
+    @Nonnull private final Map<String, int[]> occurencesByName = new HashMap<>();
+    @Nonnull private final Map<String, Type> localToType;
+
+    private MethodLocals(
+        @Nonnull Position methodPosition,
+        @Nonnull List<Pair<Position, String>> occurences,
+        @Nonnull Map<String, Type> localToType) {
+      start = PackedPositions.pack(methodPosition.getFirstLine(), methodPosition.getFirstCol());
+      end = PackedPositions.pack(methodPosition.getLastLine(), methodPosition.getLastCol());
+      this.localToType = localToType;
+
+      // hint: the parse order is the order of the positions already
+      occurences.sort(
+          Comparator.comparingLong(
+              occurence ->
+                  PackedPositions.pack(
+                      occurence.getLeft().getFirstLine(), occurence.getLeft().getFirstCol())));
+      final int size = occurences.size();
+      starts = new long[size];
+      ends = new long[size];
+      names = new String[size];
+      final Map<String, List<Integer>> indicesByName = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        final Position position = occurences.get(i).getLeft();
+        starts[i] = PackedPositions.pack(position.getFirstLine(), position.getFirstCol());
+        ends[i] = PackedPositions.pack(position.getLastLine(), position.getLastCol());
+        names[i] = occurences.get(i).getRight();
+        indicesByName.computeIfAbsent(names[i], k -> new ArrayList<>()).add(i);
+      }
+      indicesByName.forEach(
+          (name, indices) ->
+              occurencesByName.put(name, indices.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /** @return the index of the occurence at the given position or -1 */
+    private int findOccurence(long position) {
+      // last occurence which starts at or before the position
+      int lo = 0;
+      int hi = starts.length;
+      while (lo < hi) {
+        final int mid = (lo + hi) >>> 1;
+        if (starts[mid] <= position) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      final int idx = lo - 1;
+      return idx >= 0 && ends[idx] >= position ? idx : -1;
+    }
 
-  @Nonnull private final Map<MethodSubSignature, Map<String, Type>> localToType = new HashMap<>();
+    /** @return the name of the local at the given position or null */
+    @Nullable
+    private String getLocalName(@Nonnull org.eclipse.lsp4j.Position pos) {
+      final int idx = findOccurence(PackedPositions.pack(pos));
+      return idx < 0 ? null : names[idx];
+    }
+
+    @Nonnull
+    private Range getRange(int idx) {
+      return PackedPositions.toRange(starts[idx], ends[idx]);
+    }
+  }
 
   public LocalPositionResolver(Path path) {
     this.path = path;
@@ -51,122 +121,92 @@ public class LocalPositionResolver {
     walker.walk(new LocalDeclarationFinder(path), jimpleParser.file());
   }
 
+  /** gathers the local positions while the given (shared) walk over the parse tree runs. */
+  public LocalPositionResolver(@Nonnull Path path, @Nonnull ParseTreeMultiplexer walk) {
+    this.path = path;
+    walk.add(new LocalDeclarationFinder(path));
+  }
+
+  /** @return the locals of the method surrounding the given position - found in O(log n) */
   @Nullable
-  private List<Pair<Position, String>> getLocals(SootClass sc, org.eclipse.lsp4j.Position pos) {
-    final Optional<SootMethod> surroundingMethod = getSootMethodFromPosition(sc, pos);
-    if (!surroundingMethod.isPresent()) {
+  private MethodLocals getMethodFromPosition(@Nonnull org.eclipse.lsp4j.Position pos) {
+    final long position = PackedPositions.pack(pos);
+    // last method which starts at or before the position - methods do not nest
+    int lo = 0;
+    int hi = methods.size();
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (methods.get(mid).start <= position) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    if (lo == 0) {
       return null;
     }
-    return localsOfMethod.get(surroundingMethod.get().getSubSignature());
+    final MethodLocals method = methods.get(lo - 1);
+    return method.end >= position ? method : null;
   }
 
   @Nonnull
-  private Optional<SootMethod> getSootMethodFromPosition(
-      @Nonnull SootClass sc, @Nonnull org.eclipse.lsp4j.Position pos) {
-    return sc.getMethods().stream().filter(m -> isInRangeOf(pos, m.getPosition())).findAny();
-  }
-
-  private Optional<Pair<Position, String>> getSelectedLocalInfo(
-      @Nonnull List<Pair<Position, String>> locals, @Nonnull org.eclipse.lsp4j.Position pos) {
-    // determine name/range of selected local
-    return locals.stream().filter(p -> isInRangeOf(pos, p.getLeft())).findAny();
-  }
-
-  @Nonnull
-  public List<? extends Location> resolveReferences(SootClass sc, TextDocumentPositionParams pos) {
-    List<Pair<Position, String>> locals = getLocals(sc, pos.getPosition());
-    if (locals == null) {
+  public List<? extends Location> resolveReferences(@Nonnull TextDocumentPositionParams pos) {
+    final MethodLocals method = getMethodFromPosition(pos.getPosition());
+    if (method == null) {
       return Collections.emptyList();
     }
-    final Optional<Pair<Position, String>> localOpt =
-        getSelectedLocalInfo(locals, pos.getPosition());
-    if (!localOpt.isPresent()) {
+    final String localname = method.getLocalName(pos.getPosition());
+    if (localname == null) {
       return Collections.emptyList();
     }
-    final String localname = localOpt.get().getRight();
-    List<Location> list = new ArrayList<>();
-    for (Pair<Position, String> l : locals) {
-      if (l.getRight().equals(localname)) {
-        Location location = Util.positionToLocation(pos.getTextDocument().getUri(), l.getLeft());
-        list.add(location);
-      }
+    final String uri = pos.getTextDocument().getUri();
+    final int[] occurences = method.occurencesByName.get(localname);
+    final List<Location> list = new ArrayList<>(occurences.length);
+    for (int idx : occurences) {
+      list.add(new Location(uri, method.getRange(idx)));
     }
     return list;
   }
 
   @Nullable
-  public Type resolveTypeDefinition(
-      @Nonnull SootClass sc, @Nonnull org.eclipse.lsp4j.Position pos) {
-    final Optional<SootMethod> surroundingMethod = getSootMethodFromPosition(sc, pos);
-    if (!surroundingMethod.isPresent()) {
-      return null;
-    }
-    final SootMethod sm = surroundingMethod.get();
-    List<Pair<Position, String>> locals = localsOfMethod.get(sm.getSubSignature());
-    if (locals == null) {
+  public Type resolveTypeDefinition(@Nonnull org.eclipse.lsp4j.Position pos) {
+    final MethodLocals method = getMethodFromPosition(pos);
+    if (method == null) {
       return null;
     }
-
-    final Optional<Pair<Position, String>> localOpt = getSelectedLocalInfo(locals, pos);
-    if (!localOpt.isPresent()) {
+    final String localname = method.getLocalName(pos);
+    if (localname == null) {
       return null;
     }
-    final String localname = localOpt.get().getRight();
-
-    final Map<String, Type> stringTypeMap = localToType.get(sm.getSubSignature());
-    if (stringTypeMap != null) {
-      return stringTypeMap.get(localname);
-    }
-    return null;
+    return method.localToType.get(localname);
   }
 
   @Nullable
   public Either<List<? extends Location>, List<? extends LocationLink>> resolveDefinition(
-      @Nonnull SootClass sc, @Nonnull TextDocumentPositionParams pos) {
-    List<Pair<Position, String>> locals = getLocals(sc, pos.getPosition());
-    if (locals == null) {
+      @Nonnull TextDocumentPositionParams pos) {
+    final MethodLocals method = getMethodFromPosition(pos.getPosition());
+    if (method == null) {
       return null;
     }
-    final Optional<Pair<Position, String>> localOpt =
-        getSelectedLocalInfo(locals, pos.getPosition());
-    if (!localOpt.isPresent()) {
+    final String localname = method.getLocalName(pos.getPosition());
+    if (localname == null) {
       return null;
     }
-    final String localname = localOpt.get().getRight();
     // first occurence of that local (in the current method) is the definition (or declaration if
     // existing).
-    final Optional<Pair<Position, String>> deflocalOpt =
-        locals.stream().filter(p -> p.getRight().equals(localname)).findFirst();
-    if (deflocalOpt.isPresent()) {
-      return Either.forLeft(
-          Collections.singletonList(
-              Util.positionToDefLocation(
-                  pos.getTextDocument().getUri(), deflocalOpt.get().getLeft())));
-    }
-    return null;
-  }
-
-  private boolean isInRangeOf(@Nonnull org.eclipse.lsp4j.Position p1, @Nonnull Position p2) {
-    if (p1.getLine() < p2.getFirstLine()) {
-      return false;
-    } else if (p1.getLine() == p2.getFirstLine() && p1.getCharacter() < p2.getFirstCol()) {
-      return false;
-    }
-
-    if (p1.getLine() > p2.getLastLine()) {
-      return false;
-    } else if (p1.getLine() == p2.getLastLine() && p1.getCharacter() > p2.getLastCol()) {
-      return false;
-    }
-
-    return true;
+    final long defStart = method.starts[method.occurencesByName.get(localname)[0]];
+    // extract the beginning of the line i.e. the definition
+    final Range defRange =
+        Util.positionToDefRange(PackedPositions.line(defStart), PackedPositions.column(defStart));
+    return Either.forLeft(
+        Collections.singletonList(new Location(pos.getTextDocument().getUri(), defRange)));
   }
 
   private final class LocalDeclarationFinder extends JimpleBaseListener {
     private final Path path;
     private final JimpleConverterUtil util;
 
-    private MethodSubSignature currentMethodSig = null;
+    private Position currentMethodPosition = null;
     private List<Pair<Position, String>> currentLocalPositionList = null;
     private Map<String, Type> currentLocalToType = null;
 
@@ -177,7 +217,7 @@ public class LocalPositionResolver {
 
     @Override
     public void enterMethod(JimpleParser.MethodContext ctx) {
-      currentMethodSig = util.getMethodSubSignature(ctx.method_subsignature(), ctx);
+      currentMethodPosition = JimpleConverterUtil.buildPositionFromCtx(ctx);
       currentLocalPositionList = new ArrayList<>();
       currentLocalToType = new HashMap<>();
       super.enterMethod(ctx);
@@ -185,8 +225,8 @@ public class LocalPositionResolver {
 
     @Override
     public void exitMethod(JimpleParser.MethodContext ctx) {
-      localsOfMethod.put(currentMethodSig, currentLocalPositionList);
-      localToType.put(currentMethodSig, currentLocalToType);
+      methods.add(
+          new MethodLocals(currentMethodPosition, currentLocalPositionList, currentLocalToType));
     }
 
     @Override
@@ -0,0 +1,42 @@
+package magpiebridge.jimplelsp.resolver;
+
+import javax.annotation.Nonnull;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+
+/**
+ * Encodes a position (line, column) into a single long: line &lt;&lt; 32 | column. The encoded
+ * positions are ordered like the positions themselves, so they can be stored in primitive arrays
+ * and searched without creating any Position objects - those are created only when a result is
+ * handed out.
+ */
+public final class PackedPositions {
+
+  private PackedPositions() {}
+
+  public static long pack(int line, int column) {
+    return ((long) line << 32) | (column & 0xFFFFFFFFL);
+  }
+
+  public static long pack(@Nonnull Position position) {
+    return pack(position.getLine(), position.getCharacter());
+  }
+
+  public static int line(long position) {
+    return (int) (position >>> 32);
+  }
+
+  public static int column(long position) {
+    return (int) position;
+  }
+
+  @Nonnull
+  public static Position toPosition(long position) {
+    return new Position(line(position), column(position));
+  }
+
+  @Nonnull
+  public static Range toRange(long start, long end) {
+    return new Range(toPosition(start), toPosition(end));
+  }
+}
@@ -0,0 +1,35 @@
+package magpiebridge.jimplelsp.resolver;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import de.upb.swt.soot.core.signatures.Signature;
+import javax.annotation.Nonnull;
+
+/**
+ * Workspace wide intern table for Signatures (i.e. ClassTypes, MethodSignatures and
+ * FieldSignatures): every JimpleConverterUtil creates its own instances for each occurence, so
+ * without interning the per-file resolvers and the indices retain lots of equal copies. Interned
+ * Signatures can be compared by identity.
+ *
+ * <p>The table holds its entries weakly, i.e. a Signature is dropped as soon as no resolver or
+ * index references it anymore.
+ */
+public final class SignatureInterner {
+
+  private static final Interner<Signature> signatures = Interners.newWeakInterner();
+
+  private SignatureInterner() {}
+
+  /** @return the canonical instance which equals the given Signature */
+  @Nonnull
+  public static <T extends Signature> T intern(@Nonnull T signature) {
+    final Signature canonical = signatures.intern(signature);
+    if (canonical.getClass() != signature.getClass()) {
+      // equal but of another kind - keep the given instance to stay type safe
+      return signature;
+    }
+    @SuppressWarnings("unchecked")
+    final T result = (T) canonical;
+    return result;
+  }
+}
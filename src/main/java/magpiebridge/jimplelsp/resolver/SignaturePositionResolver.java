@@ -14,9 +14,12 @@ import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import magpiebridge.jimplelsp.Util;
+import magpiebridge.jimplelsp.document.ParseTreeMultiplexer;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.apache.commons.lang3.tuple.Pair;
@@ -32,6 +35,7 @@ import org.eclipse.lsp4j.Range;
 public class SignaturePositionResolver {
   private final SignatureOccurenceAggregator occurences = new SignatureOccurenceAggregator();
   private final Path path;
+  private final String uri;
   private final JimpleConverterUtil util;
 
   public SignaturePositionResolver(Path fileUri) throws IOException {
@@ -44,6 +48,7 @@ public class SignaturePositionResolver {
 
   private SignaturePositionResolver(Path path, CharStream charStream) {
     this.path = path;
+    uri = Util.pathToUri(path);
     util = new JimpleConverterUtil(path);
     JimpleParser parser = JimpleConverterUtil.createJimpleParser(charStream, path);
 
@@ -51,6 +56,14 @@ public class SignaturePositionResolver {
     walker.walk(occurences, parser.file());
   }
 
+  /** gathers the signature occurences while the given (shared) walk over the parse tree runs. */
+  public SignaturePositionResolver(@Nonnull Path path, @Nonnull ParseTreeMultiplexer walk) {
+    this.path = path;
+    uri = Util.pathToUri(path);
+    util = new JimpleConverterUtil(path);
+    walk.add(occurences);
+  }
+
   @Nullable
   public Pair<Signature, Range> resolve(org.eclipse.lsp4j.Position position) {
     return occurences.resolve(position);
@@ -59,10 +72,20 @@ public class SignaturePositionResolver {
   @Nullable
   public List<Location> resolve(Signature signature) {
     return occurences.resolve(signature).stream()
-        .map(range -> new Location(Util.pathToUri(path), range))
+        .map(range -> new Location(uri, range))
         .collect(Collectors.toList());
   }
 
+  /** passes every occurence of a Signature in this file in order of their position. */
+  public void forEachOccurence(@Nonnull BiConsumer<Signature, Range> consumer) {
+    occurences.positionContainer.forEach(consumer);
+  }
+
+  /** passes the declared class, methods and fields in order of their position. */
+  public void forEachDeclaration(@Nonnull BiConsumer<Signature, Range> consumer) {
+    occurences.declarations.forEach(decl -> consumer.accept(decl.getLeft(), decl.getRight()));
+  }
+
   /** skips e.g. the methods returntype to get the identifier (or class type) */
   @Nullable
   public Location findFirstMatchingSignature(Signature signature, Position position) {
@@ -70,12 +93,14 @@ public class SignaturePositionResolver {
     if (firstMatchingSignature == null) {
       return null;
     }
-    return new Location(Util.pathToUri(path), firstMatchingSignature);
+    return new Location(uri, firstMatchingSignature);
   }
 
   private final class SignatureOccurenceAggregator extends JimpleBaseListener {
 
     SignatureRangeContainer positionContainer = new SignatureRangeContainer();
+    // the identifiers of the declared class/methods/fields
+    List<Pair<Signature, Range>> declarations = new ArrayList<>();
     ClassType clazz;
 
     @Nullable
@@ -100,9 +125,10 @@ public class SignaturePositionResolver {
             JimpleConverterUtil.buildPositionFromCtx(ctx));
       }
       String classname = Jimple.unescape(ctx.classname.getText());
-      clazz = util.getClassType(classname);
+      clazz = SignatureInterner.intern(util.getClassType(classname));
 
       positionContainer.add(JimpleConverterUtil.buildPositionFromCtx(ctx.classname), clazz);
+      declarations.add(Pair.of(clazz, Util.ctxToRange(ctx.classname)));
 
       if (ctx.extends_clause() != null) {
         ClassType superclass = util.getClassType(ctx.extends_clause().classname.getText());
@@ -129,12 +155,15 @@ public class SignaturePositionResolver {
 
       List<Type> params = util.getTypeList(ctx.method_subsignature().type_list());
       MethodSignature methodSignature =
-          util.getIdentifierFactory()
-              .getMethodSignature(Jimple.unescape(methodname), clazz, type, params);
+          SignatureInterner.intern(
+              util.getIdentifierFactory()
+                  .getMethodSignature(Jimple.unescape(methodname), clazz, type, params));
 
       positionContainer.add(
           JimpleConverterUtil.buildPositionFromCtx(ctx.method_subsignature().method_name()),
           methodSignature);
+      declarations.add(
+          Pair.of(methodSignature, Util.ctxToRange(ctx.method_subsignature().method_name())));
 
       super.enterMethod(ctx);
     }
@@ -143,11 +172,13 @@ public class SignaturePositionResolver {
     public void enterField(JimpleParser.FieldContext ctx) {
       String fieldname = ctx.identifier().getText();
       FieldSignature fieldSignature =
-          util.getIdentifierFactory()
-              .getFieldSignature(
-                  Jimple.unescape(fieldname), clazz, util.getType(ctx.type().getText()));
+          SignatureInterner.intern(
+              util.getIdentifierFactory()
+                  .getFieldSignature(
+                      Jimple.unescape(fieldname), clazz, util.getType(ctx.type().getText())));
       positionContainer.add(
           JimpleConverterUtil.buildPositionFromCtx(ctx.identifier()), fieldSignature);
+      declarations.add(Pair.of(fieldSignature, Util.ctxToRange(ctx.identifier())));
       super.enterField(ctx);
     }
 
@@ -2,9 +2,11 @@ package magpiebridge.jimplelsp.resolver;
 
 import de.upb.swt.soot.core.signatures.Signature;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.tuple.Pair;
@@ -14,91 +16,252 @@ import org.eclipse.lsp4j.Range;
 /**
  * The Datastructure holds information about Signatures of Soot and their Range positions in a File.
  *
+ * <p>Occurences are appended in parse order - which is (almost) sorted by their start position -
+ * and the structure is built in bulk before the first query: the occurences are sorted by start (a
+ * no-op for sorted input) and a tree over the maximum end positions is created. Ranges may be
+ * nested, overlap or start at the same position; a point query returns the innermost i.e. the
+ * containing occurence with the greatest start in O(log n).
+ *
+ * <p>The occurences are stored packed in primitive arrays: positions via PackedPositions, the
+ * Signatures as indices into a table of the distinct (interned, see SignatureInterner) Signatures
+ * of the file. Range objects are only created for the results.
+ *
  * @author Markus Schmidt
  */
 class SignatureRangeContainer {
 
-  @Nonnull List<Position> startPositions = new ArrayList<>();
-  @Nonnull List<Position> endPositions = new ArrayList<>();
-  @Nonnull List<Signature> signatures = new ArrayList<>();
+  // the occurences: packed start/end positions and the index of their signature in the table
+  @Nonnull private long[] starts = new long[64];
+  @Nonnull private long[] ends = new long[64];
+  @Nonnull private int[] signatureIds = new int[64];
+  private int size = 0;
 
-  Comparator<Position> comparator = new PositionComparator();
+  // the distinct signatures of the occurences
+  @Nonnull private Signature[] signatureTable = new Signature[16];
+  private int signatureCount = 0;
+  // signature -> index in signatureTable; only needed while adding
+  @Nullable private Map<Signature, Integer> signatureIdx = new HashMap<>();
+  private boolean sorted = true;
+
+  // maxEnds[node] = maximum end of the occurences below that node; leaves start at leafOffset
+  @Nonnull private long[] maxEnds = new long[0];
+  private int leafOffset;
+  private volatile boolean built = true;
 
   void add(de.upb.swt.soot.core.model.Position position, Signature sig) {
-    // insert sorted to be accessed via binary search
-    final Position startPos = new Position(position.getFirstLine(), position.getFirstCol());
-    int idx = Collections.binarySearch(startPositions, startPos, new PositionComparator());
-    if (idx < 0) {
-      // calculate insertion index
-      idx = -idx - 1;
+    add(
+        position.getFirstLine(),
+        position.getFirstCol(),
+        position.getLastLine(),
+        position.getLastCol(),
+        sig);
+  }
 
-    } else {
-      throw new IllegalStateException(
-          "position " + startPos + " is already taken by " + signatures.get(idx));
+  void add(int firstLine, int firstCol, int lastLine, int lastCol, @Nonnull Signature sig) {
+    if (size == starts.length) {
+      final int capacity = Math.max(64, size * 2);
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      signatureIds = Arrays.copyOf(signatureIds, capacity);
+    }
+    final long start = PackedPositions.pack(firstLine, firstCol);
+    final long end = PackedPositions.pack(lastLine, lastCol);
+    if (size > 0 && compareOccurences(starts[size - 1], ends[size - 1], start, end) > 0) {
+      sorted = false;
     }
+    starts[size] = start;
+    ends[size] = end;
+    signatureIds[size] = getOrAddSignatureId(sig);
+    size++;
+    built = false;
+  }
 
-    startPositions.add(idx, startPos);
-    endPositions.add(idx, new Position(position.getLastLine(), position.getLastCol()));
+  private int getOrAddSignatureId(@Nonnull Signature sig) {
+    if (signatureIdx == null) {
+      // added after the structure was built
+      signatureIdx = new HashMap<>();
+      for (int i = 0; i < signatureCount; i++) {
+        signatureIdx.put(signatureTable[i], i);
+      }
+    }
+    final Integer id = signatureIdx.get(sig);
+    if (id != null) {
+      return id;
+    }
+    if (signatureCount == signatureTable.length) {
+      signatureTable = Arrays.copyOf(signatureTable, Math.max(16, signatureCount * 2));
+    }
+    signatureTable[signatureCount] = SignatureInterner.intern(sig);
+    signatureIdx.put(sig, signatureCount);
+    return signatureCount++;
+  }
 
-    signatures.add(idx, sig);
+  /** @return the index of the signature in the table or -1 if it does not occur */
+  private int getSignatureId(@Nonnull Signature sig) {
+    final Signature canonical = SignatureInterner.intern(sig);
+    for (int i = 0; i < signatureCount; i++) {
+      if (signatureTable[i] == canonical) {
+        return i;
+      }
+    }
+    return -1;
   }
 
-  @Nullable
-  Pair<Signature, Range> resolve(@Nonnull Position position) {
-    if (startPositions.isEmpty()) {
-      return null;
+  @Nonnull
+  private Range getRange(int idx) {
+    return PackedPositions.toRange(starts[idx], ends[idx]);
+  }
+
+  // by start, an enclosing occurence before the ones it contains (i.e. longer first)
+  private static int compareOccurences(long startA, long endA, long startB, long endB) {
+    final int cmp = Long.compare(startA, startB);
+    return cmp != 0 ? cmp : Long.compare(endB, endA);
+  }
+
+  /** sorts the occurences (if necessary) and builds the tree of maximum end positions. */
+  private void ensureBuilt() {
+    if (built) {
+      return;
     }
-    int index = getStartingIndex(position);
+    synchronized (this) {
+      if (built) {
+        return;
+      }
+      if (!sorted) {
+        sort();
+      }
+      // the container is read-only from now on (usually): release the unused capacity
+      starts = Arrays.copyOf(starts, size);
+      ends = Arrays.copyOf(ends, size);
+      signatureIds = Arrays.copyOf(signatureIds, size);
+      signatureTable = Arrays.copyOf(signatureTable, signatureCount);
+      signatureIdx = null;
 
-    if (index < 0) {
-      return null;
+      int leaves = 1;
+      while (leaves < size) {
+        leaves <<= 1;
+      }
+      leafOffset = leaves;
+      maxEnds = new long[2 * leaves];
+      Arrays.fill(maxEnds, Long.MIN_VALUE);
+      System.arraycopy(ends, 0, maxEnds, leaves, size);
+      for (int node = leaves - 1; node > 0; node--) {
+        maxEnds[node] = Math.max(maxEnds[2 * node], maxEnds[2 * node + 1]);
+      }
+      built = true;
     }
+  }
 
-    final Position startPos = startPositions.get(index);
-    final Position endPos = endPositions.get(index);
-    if (comparator.compare(startPos, position) <= 0 && comparator.compare(position, endPos) <= 0) {
-      return Pair.of(signatures.get(index), new Range(startPos, endPos));
+  private void sort() {
+    final Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
     }
-    return null;
+    // hint: TimSort is linear on the almost sorted parse order
+    Arrays.sort(order, (a, b) -> compareOccurences(starts[a], ends[a], starts[b], ends[b]));
+    final long[] sortedStarts = new long[size];
+    final long[] sortedEnds = new long[size];
+    final int[] sortedSignatureIds = new int[size];
+    for (int i = 0; i < size; i++) {
+      sortedStarts[i] = starts[order[i]];
+      sortedEnds[i] = ends[order[i]];
+      sortedSignatureIds[i] = signatureIds[order[i]];
+    }
+    starts = sortedStarts;
+    ends = sortedEnds;
+    signatureIds = sortedSignatureIds;
+    sorted = true;
   }
 
-  // binary search for position or return next smaller occurence (i.e. start position of a Range)
-  private int getStartingIndex(@Nonnull Position position) {
-    int index =
-        Collections.binarySearch(startPositions, position, PositionComparator.getInstance());
-    if (index < 0) {
-      // not exactly found: check if next smaller neighbour is surrounding it
-      index = (-index) - 1 - 1;
-    } else if (index >= startPositions.size()) {
-      // not exactly found: (greater than last element) check if next smaller neighbour is
-      // surrounding it
-      index = index - 1;
-    }
-    return Math.max(0, index);
+  /** @return index of the first occurence which starts after the given position */
+  private int upperBound(long position) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (starts[mid] <= position) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /** @return the greatest index <= maxIdx whose occurence ends at/after the position or -1 */
+  private int findLastEndingAfter(int node, int nodeFrom, int nodeTo, int maxIdx, long position) {
+    if (nodeFrom > maxIdx || maxEnds[node] < position) {
+      return -1;
+    }
+    if (node >= leafOffset) {
+      return nodeFrom;
+    }
+    final int mid = (nodeFrom + nodeTo) >>> 1;
+    final int idx = findLastEndingAfter(2 * node + 1, mid + 1, nodeTo, maxIdx, position);
+    if (idx >= 0) {
+      return idx;
+    }
+    return findLastEndingAfter(2 * node, nodeFrom, mid, maxIdx, position);
+  }
+
+  @Nullable
+  Pair<Signature, Range> resolve(@Nonnull Position position) {
+    ensureBuilt();
+    final long pos = PackedPositions.pack(position);
+    // occurences which start at or before the position: the last one which ends at or after it
+    // is the innermost containing one
+    final int lastStartingBefore = upperBound(pos) - 1;
+    if (lastStartingBefore < 0) {
+      return null;
+    }
+    final int idx = findLastEndingAfter(1, 0, leafOffset - 1, lastStartingBefore, pos);
+    if (idx < 0) {
+      return null;
+    }
+    return Pair.of(signatureTable[signatureIds[idx]], getRange(idx));
   }
 
   public List<Range> resolve(@Nonnull Signature signature) {
+    ensureBuilt();
     final List<Range> ranges = new ArrayList<>();
-    for (int i = 0, signaturesSize = signatures.size(); i < signaturesSize; i++) {
-      Signature sig = signatures.get(i);
-      if (sig.equals(signature)) {
-        ranges.add(new Range(startPositions.get(i), endPositions.get(i)));
+    final int id = getSignatureId(signature);
+    if (id < 0) {
+      return ranges;
+    }
+    for (int i = 0; i < size; i++) {
+      if (signatureIds[i] == id) {
+        ranges.add(getRange(i));
       }
     }
     return ranges;
   }
 
+  void forEach(@Nonnull BiConsumer<Signature, Range> consumer) {
+    ensureBuilt();
+    for (int i = 0; i < size; i++) {
+      consumer.accept(signatureTable[signatureIds[i]], getRange(i));
+    }
+  }
+
   @Nullable
   public Range findFirstMatchingSignature(
       Signature signature, de.upb.swt.soot.core.model.Position position) {
+    ensureBuilt();
+    // start at the occurence at the position or its preceding one
+    final long pos = PackedPositions.pack(position.getFirstLine(), position.getFirstCol());
+    int idx = upperBound(pos - 1);
+    if (idx == size || starts[idx] != pos) {
+      idx = Math.max(0, idx - 1);
+    }
 
-    int idx = getStartingIndex(new Position(position.getFirstLine(), position.getFirstCol()));
-
+    final int id = getSignatureId(signature);
+    if (id < 0) {
+      return null;
+    }
     // loop is expected to do max. 2 iterations
-    for (int i = idx, signaturesSize = signatures.size(); i < signaturesSize; i++) {
-      Signature sig = signatures.get(i);
-      if (sig.equals(signature)) {
-        return new Range(startPositions.get(i), endPositions.get(i));
+    for (int i = idx; i < size; i++) {
+      if (signatureIds[i] == id) {
+        return getRange(i);
       }
     }
     return null;
@@ -2,9 +2,7 @@ package com.github.swissiety.jimplelsp;
 
 import static org.junit.Assert.assertEquals;
 
-import de.upb.swt.soot.core.frontend.AbstractClassSource;
-import de.upb.swt.soot.core.model.AbstractClass;
-import de.upb.swt.soot.core.model.SootClass;
+import de.upb.swt.soot.core.types.ClassType;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
@@ -17,14 +15,20 @@ import magpiebridge.jimplelsp.Util;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class sms_googleTest {
 
   final JimpleLspServer jimpleLspServer = new JimpleLspServer();
 
+  // keeps the persisted index out of the user's home
+  @Rule public final TemporaryFolder indexDir = new TemporaryFolder();
+
   @Before
   JimpleLspServer setup() {
+    System.setProperty(JimpleLspServer.INDEX_DIR_PROPERTY, indexDir.getRoot().toString());
 
     final InitializeParams params = new InitializeParams();
     Path root = Paths.get("src/test/resources/sms_google/");
@@ -51,8 +55,10 @@ public class sms_googleTest {
 
     jimpleLspServer.initialize(params);
     jimpleLspServer.initialized(new InitializedParams());
-    final Collection<? extends AbstractClass<? extends AbstractClassSource>> classes =
-            jimpleLspServer.getView().getClasses();
+    // indexing runs in the background
+    jimpleLspServer.getWorkspaceIndexing().join();
+    // hint: classes restored from the index snapshot are not parsed until they are needed
+    final Collection<ClassType> classes = jimpleLspServer.getClassTypes();
     assertEquals("Not all Classes are loaded/parsed", 39, classes.size());
 
     return jimpleLspServer;
@@ -0,0 +1,21 @@
+package magpiebridge.jimplelsp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class IndexingProgressTest {
+
+  @Test
+  public void testFormatReport() {
+    assertEquals(
+        "1200/5000 files (400 files/s, ETA 10s)",
+        IndexingProgress.formatReport(1200, 5000, TimeUnit.SECONDS.toNanos(3)));
+    // total is not known yet while the workspace is scanned
+    assertEquals(
+        "300 files (100 files/s)",
+        IndexingProgress.formatReport(300, -1, TimeUnit.SECONDS.toNanos(3)));
+    assertEquals("0/10 files", IndexingProgress.formatReport(0, 10, 0));
+  }
+}
@@ -0,0 +1,102 @@
+package magpiebridge.jimplelsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class PersistentMapTest {
+
+  /** a key with a configurable hash to provoke collisions */
+  private static final class Key {
+    private final String name;
+    private final int hash;
+
+    private Key(String name, int hash) {
+      this.name = name;
+      this.hash = hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && ((Key) o).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  @Test
+  public void testPlusAndMinusKeepPreviousVersions() {
+    final PersistentMap<String, Integer> empty = PersistentMap.empty();
+    final PersistentMap<String, Integer> one = empty.plus("a", 1);
+    final PersistentMap<String, Integer> two = one.plus("b", 2);
+    final PersistentMap<String, Integer> replaced = two.plus("a", 3);
+    final PersistentMap<String, Integer> removed = replaced.minus("b");
+
+    assertTrue(empty.isEmpty());
+    assertEquals(1, one.size());
+    assertNull(one.get("b"));
+    assertEquals(Integer.valueOf(1), two.get("a"));
+    assertEquals(2, replaced.size());
+    assertEquals(Integer.valueOf(3), replaced.get("a"));
+    assertEquals(1, removed.size());
+    assertFalse(removed.containsKey("b"));
+    assertEquals(Integer.valueOf(2), two.get("b"));
+
+    assertSame(two, two.minus("x"));
+    assertSame(two, two.plus("b", two.get("b")));
+    assertTrue(one.minus("a").isEmpty());
+  }
+
+  @Test
+  public void testCollisions() {
+    final Key a = new Key("a", 42);
+    final Key b = new Key("b", 42);
+    final Key c = new Key("c", 42 + (1 << 20));
+    PersistentMap<Key, String> map = PersistentMap.<Key, String>empty().plus(a, "a").plus(b, "b");
+    map = map.plus(c, "c");
+    assertEquals(3, map.size());
+    assertEquals("a", map.get(a));
+    assertEquals("b", map.get(b));
+    assertEquals("c", map.get(c));
+    assertNull(map.get(new Key("d", 42)));
+
+    map = map.minus(a);
+    assertEquals(2, map.size());
+    assertNull(map.get(a));
+    assertEquals("b", map.get(b));
+    map = map.minus(b).minus(c);
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testLikeHashMap() {
+    final Random random = new Random(4711);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    PersistentMap<Integer, Integer> map = PersistentMap.empty();
+    for (int i = 0; i < 100_000; i++) {
+      // small range: many replacements and removals
+      final Integer key = random.nextInt(20_000) * 31;
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        map = map.minus(key);
+      } else {
+        expected.put(key, i);
+        map = map.plus(key, i);
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    final Map<Integer, Integer> actual = new HashMap<>();
+    map.forEach(actual::put);
+    assertEquals(expected, actual);
+  }
+}
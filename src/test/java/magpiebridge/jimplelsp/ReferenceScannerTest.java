@@ -0,0 +1,80 @@
+package magpiebridge.jimplelsp;
+
+import de.upb.swt.soot.core.signatures.Signature;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import junit.framework.TestCase;
+import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.Position;
+
+public class ReferenceScannerTest extends TestCase {
+
+  private final ForkJoinPool pool = new ForkJoinPool(2);
+  private final ReferenceScanner scanner = new ReferenceScanner(pool);
+  private final Path path =
+      Paths.get("src/test/resources/signatureOccurences.jimple").toAbsolutePath();
+  private SignaturePositionResolver resolver;
+
+  @Override
+  protected void setUp() {
+    try {
+      resolver = new SignaturePositionResolver(path);
+    } catch (IOException exception) {
+      exception.printStackTrace();
+      fail("filenotfound");
+    }
+  }
+
+  @Override
+  protected void tearDown() {
+    pool.shutdown();
+  }
+
+  public void testScanEqualsResolver() {
+    // java.lang.Exception
+    final Signature sig = resolver.resolve(new Position(16, 46)).getLeft();
+    final List<Location> references = scanner.scan(Collections.singletonList(path), sig, null);
+    assertTrue(references.size() >= 4);
+    assertEquals(new HashSet<>(resolver.resolve(sig)), new HashSet<>(references));
+  }
+
+  public void testSkipsMissingFiles() {
+    final Signature sig = resolver.resolve(new Position(16, 46)).getLeft();
+    final Path missing = Paths.get("src/test/resources/doesNotExist.jimple").toAbsolutePath();
+    assertEquals(
+        resolver.resolve(sig).size(), scanner.scan(Arrays.asList(missing, path), sig, null).size());
+  }
+
+  public void testSkipsInvalidFiles() {
+    // java.lang.Exception - referenced by the broken file as well
+    final Signature sig = resolver.resolve(new Position(16, 46)).getLeft();
+    final Path invalid = Paths.get("src/test/resources/invalidSyntax.jimple").toAbsolutePath();
+    assertTrue(scanner.scan(Collections.singletonList(invalid), sig, null).isEmpty());
+    assertEquals(
+        new HashSet<>(resolver.resolve(sig)),
+        new HashSet<>(scanner.scan(Arrays.asList(invalid, path), sig, null)));
+  }
+
+  public void testCancel() {
+    final Signature sig = resolver.resolve(new Position(16, 46)).getLeft();
+    try {
+      scanner.scan(
+          Collections.singletonList(path),
+          sig,
+          () -> {
+            throw new CancellationException();
+          });
+      fail("not cancelled");
+    } catch (CancellationException expected) {
+      // cancelled
+    }
+  }
+}
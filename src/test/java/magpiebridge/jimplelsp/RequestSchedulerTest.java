@@ -0,0 +1,55 @@
+package magpiebridge.jimplelsp;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import magpiebridge.jimplelsp.RequestScheduler.Priority;
+import magpiebridge.jimplelsp.document.ChangeCoalescer;
+import org.junit.Test;
+
+public class RequestSchedulerTest {
+
+  @Test
+  public void testAnalysisRunsWhileBackgroundIsSaturated() throws InterruptedException {
+    final RequestScheduler scheduler = new RequestScheduler(false);
+    final ChangeCoalescer analyses =
+        new ChangeCoalescer(task -> scheduler.execute(Priority.ANALYSIS, task));
+    final CountDownLatch indexingDone = new CountDownLatch(1);
+    final CountDownLatch analyzed = new CountDownLatch(1);
+    try {
+      // occupy every background worker and fill its ForkJoinPool like the workspace indexing
+      final int backgroundThreads = scheduler.getConcurrency(Priority.BACKGROUND);
+      final CountDownLatch indexing = new CountDownLatch(backgroundThreads);
+      for (int i = 0; i < backgroundThreads; i++) {
+        scheduler.execute(
+            Priority.BACKGROUND,
+            () -> {
+              indexing.countDown();
+              awaitUninterruptibly(indexingDone);
+            });
+      }
+      final ForkJoinPool backgroundPool = scheduler.getForkJoinPool(Priority.BACKGROUND);
+      for (int i = 0; i < 100; i++) {
+        backgroundPool.execute(() -> awaitUninterruptibly(indexingDone));
+      }
+      assertTrue(indexing.await(5, TimeUnit.SECONDS));
+
+      analyses.submit("file:///a.jimple", 0, analyzed::countDown);
+      assertTrue(analyzed.await(5, TimeUnit.SECONDS));
+    } finally {
+      indexingDone.countDown();
+      analyses.shutdown();
+      scheduler.shutdown();
+    }
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
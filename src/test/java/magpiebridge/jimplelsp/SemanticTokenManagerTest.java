@@ -0,0 +1,86 @@
+package magpiebridge.jimplelsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SemanticTokensEdit;
+import org.eclipse.lsp4j.SemanticTokensLegend;
+import org.junit.Test;
+
+public class SemanticTokenManagerTest {
+
+  @Test
+  public void testDiff() {
+    final List<Integer> previous = Arrays.asList(0, 0, 5, 1, 0, 1, 2, 3, 2, 0, 0, 4, 1, 2, 0);
+    assertTrue(SemanticTokenManager.diff(previous, previous).isEmpty());
+
+    // a line was inserted before the second token
+    final List<Integer> current = Arrays.asList(0, 0, 5, 1, 0, 2, 2, 3, 2, 0, 0, 4, 1, 2, 0);
+    final List<SemanticTokensEdit> edits = SemanticTokenManager.diff(previous, current);
+    assertEquals(1, edits.size());
+    assertEquals(5, edits.get(0).getStart());
+    assertEquals(1, edits.get(0).getDeleteCount());
+    assertEquals(Arrays.asList(2), edits.get(0).getData());
+
+    // the last token was removed
+    final List<SemanticTokensEdit> removal =
+        SemanticTokenManager.diff(previous, previous.subList(0, 10));
+    assertEquals(10, removal.get(0).getStart());
+    assertEquals(5, removal.get(0).getDeleteCount());
+    assertTrue(removal.get(0).getData().isEmpty());
+  }
+
+  @Test
+  public void testEncoding() {
+    final SemanticTokenManager manager =
+        new SemanticTokenManager(
+            new SemanticTokensLegend(
+                Arrays.asList("keyword", "type"), Arrays.asList("static", "declaration")));
+    manager.paintText(SemanticTokenTypeEnum.Type, 1, 2, 3);
+    manager.paintText(
+        SemanticTokenTypeEnum.Keyword,
+        SemanticTokenModifierEnum.Declaration.bit() | SemanticTokenModifierEnum.Readonly.bit(),
+        1,
+        8,
+        4);
+    manager.paintText(
+        SemanticTokenTypeEnum.Keyword,
+        SemanticTokenModifierEnum.Static.bit() | SemanticTokenModifierEnum.Declaration.bit(),
+        3,
+        1,
+        2);
+
+    // readonly is not in the legend: its bit is dropped
+    assertEquals(
+        Arrays.asList(1, 2, 3, 1, 0, 0, 6, 4, 0, 2, 2, 1, 2, 0, 3), manager.getCanvas());
+  }
+
+  @Test
+  public void testRange() {
+    final SemanticTokenManager manager =
+        new SemanticTokenManager(SyntaxHighlightingProvider.createLegend());
+    manager.paintText(SemanticTokenTypeEnum.Keyword, 0, 0, 5);
+    manager.paintText(SemanticTokenTypeEnum.Type, 2, 4, 3);
+    manager.paintText(SemanticTokenTypeEnum.Type, 2, 10, 6);
+    manager.paintText(SemanticTokenTypeEnum.Keyword, 5, 2, 4);
+
+    final List<Integer> tokens =
+        SemanticTokenManager.range(
+            manager.getCanvas(), new Range(new Position(1, 0), new Position(3, 0)));
+    assertEquals(10, tokens.size());
+    // the first token in range is encoded relative to the document start
+    assertEquals(Arrays.asList(2, 4, 3), tokens.subList(0, 3));
+    assertEquals(Arrays.asList(0, 6, 6), tokens.subList(5, 8));
+
+    // the end of the range is exclusive, a token overlapping the start is included
+    final List<Integer> partialLine =
+        SemanticTokenManager.range(
+            manager.getCanvas(), new Range(new Position(2, 6), new Position(2, 10)));
+    assertEquals(Arrays.asList(2, 4, 3), partialLine.subList(0, 3));
+    assertEquals(5, partialLine.size());
+  }
+}
@@ -0,0 +1,92 @@
+package magpiebridge.jimplelsp.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ChangeCoalescerTest {
+
+  @Test
+  public void testSupersededTasksAreDropped() throws InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    final ChangeCoalescer coalescer = new ChangeCoalescer(executor);
+    final List<Integer> analyzed = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch done = new CountDownLatch(1);
+    try {
+      for (int version = 1; version < 10; version++) {
+        final int v = version;
+        coalescer.submit("file:///a.jimple", 200, () -> analyzed.add(v));
+      }
+      assertTrue(coalescer.isPending("file:///a.jimple"));
+      coalescer.submit(
+          "file:///a.jimple",
+          200,
+          () -> {
+            analyzed.add(10);
+            done.countDown();
+          });
+
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertEquals(Collections.singletonList(10), analyzed);
+    } finally {
+      coalescer.shutdown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testTasksOfAUriDontOverlap() throws InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    final ChangeCoalescer coalescer = new ChangeCoalescer(executor);
+    final List<Integer> analyzed = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    try {
+      coalescer.submit(
+          "file:///a.jimple",
+          0,
+          () -> {
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            analyzed.add(1);
+          });
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+
+      // settles while the first one is running: it has to wait for it
+      coalescer.submit(
+          "file:///a.jimple",
+          0,
+          () -> {
+            analyzed.add(2);
+            done.countDown();
+          });
+      Thread.sleep(50);
+      assertEquals(Collections.emptyList(), analyzed);
+
+      release.countDown();
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertEquals(2, analyzed.size());
+      assertEquals(Integer.valueOf(1), analyzed.get(0));
+      assertEquals(Integer.valueOf(2), analyzed.get(1));
+      Thread.sleep(50);
+      assertFalse(coalescer.isPending("file:///a.jimple"));
+    } finally {
+      coalescer.shutdown();
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package magpiebridge.jimplelsp.document;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.junit.Test;
+
+public class DocumentBufferTest {
+
+  private static TextDocumentContentChangeEvent edit(
+      int startLine, int startCol, int endLine, int endCol, String text) {
+    final TextDocumentContentChangeEvent event = new TextDocumentContentChangeEvent(text);
+    event.setRange(
+        new Range(new Position(startLine, startCol), new Position(endLine, endCol)));
+    return event;
+  }
+
+  @Test
+  public void testInsertAndDelete() {
+    final DocumentBuffer buffer = new DocumentBuffer("file:///a.jimple", 1, "class A\n{\n}\n");
+
+    buffer.applyChanges(2, Collections.singletonList(edit(0, 5, 0, 5, "s")));
+    assertEquals("classs A\n{\n}\n", buffer.getText());
+    assertEquals(2, buffer.getVersion());
+
+    buffer.applyChanges(3, Collections.singletonList(edit(0, 5, 0, 6, "")));
+    assertEquals("class A\n{\n}\n", buffer.getText());
+  }
+
+  @Test
+  public void testMultilineEdits() {
+    final DocumentBuffer buffer = new DocumentBuffer("file:///a.jimple", 1, "a\nb\nc\nd");
+    assertEquals(4, buffer.getLineCount());
+
+    // join lines b and c
+    buffer.applyChanges(2, Collections.singletonList(edit(1, 1, 2, 0, " ")));
+    assertEquals("a\nb c\nd", buffer.getText());
+    assertEquals(3, buffer.getLineCount());
+
+    // split a line again and insert another one
+    buffer.applyChanges(3, Collections.singletonList(edit(1, 1, 1, 2, "\nx\n")));
+    assertEquals("a\nb\nx\nc\nd", buffer.getText());
+    assertEquals(5, buffer.getLineCount());
+    assertEquals(6, buffer.getOffset(new Position(3, 0)));
+    assertEquals('c', buffer.charAt(buffer.getOffset(new Position(3, 0))));
+
+    // subsequent edits in one notification are applied in order
+    buffer.applyChanges(
+        4, Arrays.asList(edit(4, 0, 4, 1, "e"), edit(0, 0, 1, 0, ""), edit(3, 1, 3, 1, "!")));
+    assertEquals("b\nx\nc\ne!", buffer.getText());
+    assertEquals(4, buffer.getVersion());
+  }
+
+  @Test
+  public void testPositionClamping() {
+    final DocumentBuffer buffer = new DocumentBuffer("file:///a.jimple", 0, "ab\r\ncd");
+    // in front of the "\r\n"
+    assertEquals(2, buffer.getOffset(new Position(0, 42)));
+    assertEquals(2, buffer.getOffset(new Position(0, 3)));
+    assertEquals(6, buffer.getOffset(new Position(1, 42)));
+    assertEquals(6, buffer.getOffset(new Position(7, 0)));
+  }
+
+  @Test
+  public void testFullSyncAndGrowing() {
+    final DocumentBuffer buffer = new DocumentBuffer("file:///a.jimple", 0, "");
+    buffer.applyChanges(1, Collections.singletonList(new TextDocumentContentChangeEvent("x\n")));
+    assertEquals("x\n", buffer.getText());
+
+    final StringBuilder expected = new StringBuilder("x\n");
+    for (int i = 0; i < 2000; i++) {
+      buffer.applyChanges(i + 2, Collections.singletonList(edit(i + 1, 0, i + 1, 0, "line\n")));
+      expected.append("line\n");
+    }
+    assertEquals(expected.toString(), buffer.getText());
+    assertEquals(2002, buffer.getLineCount());
+  }
+}
@@ -0,0 +1,61 @@
+package magpiebridge.jimplelsp.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class DocumentCacheTest {
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() {
+    final DocumentCache<String> cache = new DocumentCache<>(2, Long.MAX_VALUE, String::length);
+    cache.put("file:///a.jimple", "a");
+    cache.put("file:///b.jimple", "b");
+    // touch a so b is the least recently used one
+    assertEquals("a", cache.get("file:///a.jimple"));
+    cache.put("file:///c.jimple", "c");
+
+    assertEquals(2, cache.size());
+    assertNull(cache.get("file:///b.jimple"));
+    assertNotNull(cache.get("file:///a.jimple"));
+    assertNotNull(cache.get("file:///c.jimple"));
+  }
+
+  @Test
+  public void testWeightBound() {
+    final DocumentCache<String> cache = new DocumentCache<>(100, 10, String::length);
+    cache.put("file:///a.jimple", "aaaaaa");
+    cache.put("file:///b.jimple", "bbbbbb");
+    assertNull(cache.get("file:///a.jimple"));
+    assertEquals("bbbbbb", cache.get("file:///b.jimple"));
+  }
+
+  @Test
+  public void testPinnedAreNotEvicted() {
+    final DocumentCache<String> cache = new DocumentCache<>(1, Long.MAX_VALUE, String::length);
+    cache.pin("file:///open.jimple");
+    cache.put("file:///open.jimple", "open");
+    cache.put("file:///a.jimple", "a");
+    cache.put("file:///b.jimple", "b");
+    assertEquals("open", cache.get("file:///open.jimple"));
+    assertNull(cache.get("file:///a.jimple"));
+
+    // closing makes it evictable again
+    cache.unpin("file:///open.jimple");
+    assertNull(cache.get("file:///b.jimple"));
+    assertEquals("open", cache.get("file:///open.jimple"));
+  }
+
+  @Test
+  public void testEvictedEntriesAreLoadedAgain() {
+    final DocumentCache<String> cache = new DocumentCache<>(1, Long.MAX_VALUE, String::length);
+    final AtomicInteger loads = new AtomicInteger();
+    cache.getOrLoad("file:///a.jimple", uri -> "a" + loads.incrementAndGet());
+    assertEquals("a1", cache.getOrLoad("file:///a.jimple", uri -> "a" + loads.incrementAndGet()));
+    cache.put("file:///b.jimple", "b");
+    assertEquals("a2", cache.getOrLoad("file:///a.jimple", uri -> "a" + loads.incrementAndGet()));
+  }
+}
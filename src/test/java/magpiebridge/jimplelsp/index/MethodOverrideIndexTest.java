@@ -0,0 +1,74 @@
+package magpiebridge.jimplelsp.index;
+
+import de.upb.swt.soot.core.signatures.MethodSignature;
+import de.upb.swt.soot.core.signatures.Signature;
+import de.upb.swt.soot.core.types.ClassType;
+import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+
+public class MethodOverrideIndexTest extends TestCase {
+
+  private final JimpleConverterUtil util = new JimpleConverterUtil(Paths.get("test.jimple"));
+  private final ClassType object = util.getClassType("java.lang.Object");
+  private final ClassType listener = util.getClassType("de.upb.Listener");
+  private final ClassType a = util.getClassType("de.upb.A");
+  private final ClassType b = util.getClassType("de.upb.B");
+
+  private final TypeHierarchyIndex typeHierarchy = new TypeHierarchyIndex();
+  private final MethodOverrideIndex index = new MethodOverrideIndex(typeHierarchy);
+
+  private MethodSignature onClick(ClassType declClass) {
+    return util.getIdentifierFactory()
+        .getMethodSignature(
+            "onClick", declClass, util.getType("void"), Collections.singletonList(object));
+  }
+
+  private void declare(
+      String uri, ClassType classType, ClassType superclass, ClassType... interfaces) {
+    typeHierarchy.update(
+        uri, classType, new TypeHierarchyIndex.Supertypes(superclass, Arrays.asList(interfaces)));
+    final Map<Signature, Range> declarations = new LinkedHashMap<>();
+    declarations.put(classType, new Range(new Position(0, 0), new Position(0, 1)));
+    declarations.put(onClick(classType), new Range(new Position(2, 0), new Position(2, 7)));
+    index.update(uri, declarations);
+  }
+
+  @Override
+  protected void setUp() {
+    declare("file:///Listener.jimple", listener, object);
+    declare("file:///A.jimple", a, object, listener);
+    declare("file:///B.jimple", b, a);
+  }
+
+  public void testOverriders() {
+    final List<Location> overriders = index.getOverriders(onClick(listener), null);
+    assertEquals(2, overriders.size());
+    assertEquals(
+        Collections.singletonList(index.getLocation(onClick(b))),
+        index.getOverriders(onClick(a), null));
+    assertEquals("file:///B.jimple", index.getLocation(onClick(b)).getUri());
+    assertTrue(index.getOverriders(onClick(b), null).isEmpty());
+  }
+
+  public void testOverridden() {
+    // the nearest declaration only
+    assertEquals(Collections.singletonList(onClick(a)), index.getOverridden(onClick(b)));
+    assertEquals(Collections.singletonList(onClick(listener)), index.getOverridden(onClick(a)));
+    assertTrue(index.getOverridden(onClick(listener)).isEmpty());
+  }
+
+  public void testRemove() {
+    index.remove("file:///A.jimple");
+    assertNull(index.getLocation(onClick(a)));
+    assertEquals(1, index.getOverriders(onClick(listener), null).size());
+  }
+}
@@ -0,0 +1,54 @@
+package magpiebridge.jimplelsp.index;
+
+import de.upb.swt.soot.core.signatures.Signature;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import junit.framework.TestCase;
+import magpiebridge.jimplelsp.Util;
+import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.Position;
+
+public class ReferenceIndexTest extends TestCase {
+
+  private final ReferenceIndex index = new ReferenceIndex();
+  private SignaturePositionResolver resolver;
+  private String uri;
+
+  @Override
+  protected void setUp() {
+    final Path path = Paths.get("src/test/resources/signatureOccurences.jimple").toAbsolutePath();
+    uri = Util.pathToUri(path);
+    try {
+      resolver = new SignaturePositionResolver(path);
+    } catch (IOException exception) {
+      exception.printStackTrace();
+      fail("filenotfound");
+    }
+    index.update(uri, resolver);
+  }
+
+  public void testLookupEqualsScan() {
+    // java.lang.Exception
+    final Signature sig = resolver.resolve(new Position(16, 46)).getLeft();
+    final List<Location> references = index.getReferences(sig);
+    assertTrue(references.size() >= 4);
+    assertEquals(new HashSet<>(resolver.resolve(sig)), new HashSet<>(references));
+  }
+
+  public void testUpdateAndRemove() {
+    final Signature sig = resolver.resolve(new Position(16, 46)).getLeft();
+    final int count = index.getReferences(sig).size();
+
+    // updating a document replaces its occurences
+    index.update(uri, resolver);
+    assertEquals(count, index.getReferences(sig).size());
+
+    index.remove(uri);
+    assertFalse(index.contains(uri));
+    assertTrue(index.getReferences(sig).isEmpty());
+  }
+}
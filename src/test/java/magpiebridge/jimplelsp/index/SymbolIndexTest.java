@@ -0,0 +1,79 @@
+package magpiebridge.jimplelsp.index;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import magpiebridge.jimplelsp.Util;
+import magpiebridge.jimplelsp.resolver.SignaturePositionResolver;
+import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.SymbolKind;
+
+public class SymbolIndexTest extends TestCase {
+
+  private static final List<SymbolKind> ALL_KINDS =
+      Arrays.asList(SymbolKind.Class, SymbolKind.Method, SymbolKind.Field);
+
+  private final SymbolIndex index = new SymbolIndex();
+  private String uri;
+
+  @Override
+  protected void setUp() {
+    final Path path = Paths.get("src/test/resources/signatureOccurences.jimple").toAbsolutePath();
+    uri = Util.pathToUri(path);
+    try {
+      index.update(uri, new SignaturePositionResolver(path));
+    } catch (IOException exception) {
+      exception.printStackTrace();
+      fail("filenotfound");
+    }
+  }
+
+  public void testRanking() {
+    // exact match before substring match
+    final List<SymbolInformation> cars = index.search("Car", 32, ALL_KINDS);
+    assertEquals(1, cars.size());
+    assertEquals("de.upb.Car", cars.get(0).getName());
+    assertEquals(SymbolKind.Class, cars.get(0).getKind());
+    assertEquals(uri, cars.get(0).getLocation().getUri());
+
+    assertEquals("driving", index.search("driv", 32, ALL_KINDS).get(0).getName());
+    // fuzzy
+    assertEquals("driving", index.search("drvng", 32, ALL_KINDS).get(0).getName());
+    assertEquals("driving", index.search("drivign", 32, ALL_KINDS).get(0).getName());
+
+    assertTrue(index.search("xyz", 32, ALL_KINDS).isEmpty());
+  }
+
+  public void testLimitAndKinds() {
+    assertTrue(index.search("driv", 0, ALL_KINDS).isEmpty());
+    assertTrue(
+        index.search("driv", 32, Collections.singletonList(SymbolKind.Field)).isEmpty());
+  }
+
+  public void testSearchDoesNotWaitForUpdates() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // updates are serialized on the index - a search must not wait for a running one
+      synchronized (index) {
+        final Future<List<SymbolInformation>> cars =
+            executor.submit(() -> index.search("Car", 32, ALL_KINDS));
+        assertEquals(1, cars.get(5, TimeUnit.SECONDS).size());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void testRemove() {
+    index.remove(uri);
+    assertTrue(index.search("Car", 32, ALL_KINDS).isEmpty());
+  }
+}
@@ -0,0 +1,75 @@
+package magpiebridge.jimplelsp.index;
+
+import de.upb.swt.soot.core.types.ClassType;
+import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import junit.framework.TestCase;
+
+public class TypeHierarchyIndexTest extends TestCase {
+
+  private final JimpleConverterUtil util = new JimpleConverterUtil(Paths.get("test.jimple"));
+  private final ClassType object = util.getClassType("java.lang.Object");
+  private final ClassType listener = util.getClassType("de.upb.Listener");
+  private final ClassType a = util.getClassType("de.upb.A");
+  private final ClassType b = util.getClassType("de.upb.B");
+  private final ClassType c = util.getClassType("de.upb.C");
+
+  private final TypeHierarchyIndex index = new TypeHierarchyIndex();
+
+  @Override
+  protected void setUp() {
+    index.update(
+        "file:///Listener.jimple",
+        listener,
+        new TypeHierarchyIndex.Supertypes(object, Collections.emptyList()));
+    index.update(
+        "file:///A.jimple",
+        a,
+        new TypeHierarchyIndex.Supertypes(object, Collections.singletonList(listener)));
+    index.update(
+        "file:///B.jimple", b, new TypeHierarchyIndex.Supertypes(a, Collections.emptyList()));
+  }
+
+  public void testSubtypes() {
+    assertEquals(Collections.singletonList(a), index.getDirectSubtypes(listener));
+    assertEquals(new LinkedHashSet<>(Arrays.asList(a, b)), index.getSubtypes(listener));
+    assertEquals(new LinkedHashSet<>(Arrays.asList(listener, a, b)), index.getSubtypes(object));
+    assertTrue(index.getSubtypes(b).isEmpty());
+
+    assertTrue(index.isDeclared(a));
+    assertFalse(index.isDeclared(object));
+    assertEquals("file:///B.jimple", index.getUri(b));
+    assertEquals(a, index.getSupertypes(b).getSuperclass());
+  }
+
+  public void testUpdate() {
+    // B implements Listener directly instead of extending A
+    index.update(
+        "file:///B.jimple",
+        b,
+        new TypeHierarchyIndex.Supertypes(object, Collections.singletonList(listener)));
+    assertTrue(index.getSubtypes(a).isEmpty());
+    assertEquals(Arrays.asList(a, b), index.getDirectSubtypes(listener));
+
+    // the class of the document was renamed
+    index.update(
+        "file:///B.jimple", c, new TypeHierarchyIndex.Supertypes(a, Collections.emptyList()));
+    assertFalse(index.isDeclared(b));
+    assertEquals(Collections.singletonList(a), index.getDirectSubtypes(listener));
+    assertEquals(Collections.singleton(c), index.getSubtypes(a));
+
+    // restored information does not override newer one
+    index.updateIfAbsent(
+        "file:///B.jimple", b, new TypeHierarchyIndex.Supertypes(a, Collections.emptyList()));
+    assertFalse(index.isDeclared(b));
+  }
+
+  public void testRemove() {
+    index.remove("file:///A.jimple");
+    assertEquals(Collections.singleton(b), index.getSubtypes(a));
+    assertEquals(Collections.singleton(listener), index.getSubtypes(object));
+  }
+}
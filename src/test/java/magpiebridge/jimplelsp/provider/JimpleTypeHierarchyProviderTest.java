@@ -0,0 +1,73 @@
+package magpiebridge.jimplelsp.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import de.upb.swt.soot.core.types.ClassType;
+import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
+import java.nio.file.Paths;
+import java.util.Collections;
+import magpiebridge.jimplelsp.index.SymbolIndex;
+import magpiebridge.jimplelsp.index.TypeHierarchyIndex;
+import org.eclipse.lsp4j.TypeHierarchyDirection;
+import org.eclipse.lsp4j.TypeHierarchyItem;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+import org.junit.Test;
+
+public class JimpleTypeHierarchyProviderTest {
+
+  private static final CancelChecker NOT_CANCELED = () -> {};
+
+  private final JimpleConverterUtil util = new JimpleConverterUtil(Paths.get("test.jimple"));
+  private final ClassType object = util.getClassType("java.lang.Object");
+  private final ClassType a = util.getClassType("de.upb.A");
+  private final ClassType b = util.getClassType("de.upb.B");
+  private final ClassType c = util.getClassType("de.upb.C");
+
+  private final JimpleTypeHierarchyProvider provider;
+
+  public JimpleTypeHierarchyProviderTest() {
+    // A <- B <- C
+    final TypeHierarchyIndex index = new TypeHierarchyIndex();
+    index.update(
+        "file:///A.jimple", a, new TypeHierarchyIndex.Supertypes(object, Collections.emptyList()));
+    index.update(
+        "file:///B.jimple", b, new TypeHierarchyIndex.Supertypes(a, Collections.emptyList()));
+    index.update(
+        "file:///C.jimple", c, new TypeHierarchyIndex.Supertypes(b, Collections.emptyList()));
+    provider = new JimpleTypeHierarchyProvider(index, new SymbolIndex());
+  }
+
+  @Test
+  public void testExpandsOneLevel() {
+    final TypeHierarchyItem item =
+        provider.createItem(a, 5, TypeHierarchyDirection.Both, NOT_CANCELED);
+    assertNotNull(item);
+    // java.lang.Object is not declared in the workspace
+    assertTrue(item.getParents().isEmpty());
+    assertEquals(1, item.getChildren().size());
+
+    final TypeHierarchyItem child = item.getChildren().get(0);
+    assertEquals("B", child.getName());
+    // unresolved until the client asks for it
+    assertNull(child.getChildren());
+    assertNull(child.getParents());
+  }
+
+  @Test
+  public void testResolveExpandsTheNextLevel() {
+    final TypeHierarchyItem item =
+        provider.createItem(a, 5, TypeHierarchyDirection.Children, NOT_CANCELED);
+    assertNotNull(item);
+    final TypeHierarchyItem child = item.getChildren().get(0);
+
+    final TypeHierarchyItem resolved =
+        provider.resolve(child, 5, TypeHierarchyDirection.Children, NOT_CANCELED);
+    assertNotNull(resolved);
+    assertEquals(1, resolved.getChildren().size());
+    assertEquals("C", resolved.getChildren().get(0).getName());
+    assertNull(resolved.getChildren().get(0).getChildren());
+  }
+}
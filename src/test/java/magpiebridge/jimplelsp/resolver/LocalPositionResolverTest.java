@@ -0,0 +1,105 @@
+package magpiebridge.jimplelsp.resolver;
+
+import de.upb.swt.soot.core.types.Type;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import junit.framework.TestCase;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.LocationLink;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentPositionParams;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+
+public class LocalPositionResolverTest extends TestCase {
+
+  private LocalPositionResolver resolver;
+  private String uri;
+
+  @Override
+  protected void setUp() {
+    final Path path = Paths.get("src/test/resources/localOccurences.jimple").toAbsolutePath();
+    uri = path.toUri().toString();
+    resolver = new LocalPositionResolver(path);
+  }
+
+  private TextDocumentPositionParams params(int line, int column) {
+    return new TextDocumentPositionParams(
+        new TextDocumentIdentifier(uri), new Position(line, column));
+  }
+
+  public void testFirstCharacterOfLocal() {
+    // "i0" in "$i2 = i0 + i1;"
+    final Type type = resolver.resolveTypeDefinition(new Position(29, 14));
+    assertNotNull(type);
+    assertEquals("int", type.toString());
+    assertEquals(3, resolver.resolveReferences(params(29, 14)).size());
+  }
+
+  public void testLastCharacterOfLocal() {
+    // "i1" in "$i2 = i0 + i1;"
+    final Type type = resolver.resolveTypeDefinition(new Position(29, 20));
+    assertNotNull(type);
+    assertEquals("int", type.toString());
+    final List<? extends Location> references = resolver.resolveReferences(params(29, 20));
+    assertEquals(3, references.size());
+    assertEquals(new Position(23, 16), references.get(0).getRange().getStart());
+  }
+
+  public void testBetweenLocals() {
+    // the "=" in "$i2 = i0 + i1;"
+    assertNull(resolver.resolveTypeDefinition(new Position(29, 12)));
+    assertTrue(resolver.resolveReferences(params(29, 12)).isEmpty());
+    assertNull(resolver.resolveDefinition(params(29, 12)));
+  }
+
+  public void testBetweenMethods() {
+    assertNull(resolver.resolveTypeDefinition(new Position(16, 0)));
+    assertTrue(resolver.resolveReferences(params(16, 0)).isEmpty());
+    assertNull(resolver.resolveDefinition(params(16, 0)));
+
+    assertNull(resolver.resolveTypeDefinition(new Position(21, 4)));
+    assertTrue(resolver.resolveReferences(params(21, 4)).isEmpty());
+    assertNull(resolver.resolveDefinition(params(21, 4)));
+  }
+
+  public void testMethodWithoutLocals() {
+    // "return;" of noLocals()
+    assertNull(resolver.resolveTypeDefinition(new Position(19, 10)));
+    assertTrue(resolver.resolveReferences(params(19, 10)).isEmpty());
+    assertNull(resolver.resolveDefinition(params(19, 10)));
+  }
+
+  public void testResolveDefinition() {
+    // "$i2" in "return $i2;" is declared in "int i0, i1, $i2;"
+    final Either<List<? extends Location>, List<? extends LocationLink>> definition =
+        resolver.resolveDefinition(params(31, 16));
+    assertNotNull(definition);
+    assertTrue(definition.isLeft());
+    assertEquals(1, definition.getLeft().size());
+    final Location location = definition.getLeft().get(0);
+    assertEquals(uri, location.getUri());
+    assertEquals(new Range(new Position(23, 20), new Position(24, 0)), location.getRange());
+  }
+
+  public void testResolveReferences() {
+    // "r0" in "specialinvoke r0.<...>" - the occurences are limited to its method
+    final List<? extends Location> references = resolver.resolveReferences(params(11, 22));
+    assertEquals(3, references.size());
+    assertEquals(new Position(7, 26), references.get(0).getRange().getStart());
+    assertEquals(new Position(9, 8), references.get(1).getRange().getStart());
+    assertEquals(new Position(11, 22), references.get(2).getRange().getStart());
+    for (Location reference : references) {
+      assertEquals(uri, reference.getUri());
+    }
+  }
+
+  public void testResolveTypeDefinition() {
+    // "r0" in "r0 := @this: de.upb.Calculator;"
+    final Type type = resolver.resolveTypeDefinition(new Position(9, 9));
+    assertNotNull(type);
+    assertEquals("de.upb.Calculator", type.toString());
+  }
+}
@@ -0,0 +1,20 @@
+package magpiebridge.jimplelsp.resolver;
+
+import junit.framework.TestCase;
+import org.eclipse.lsp4j.Position;
+
+public class PackedPositionsTest extends TestCase {
+
+  public void testRoundTrip() {
+    final long packed = PackedPositions.pack(4711, 42);
+    assertEquals(4711, PackedPositions.line(packed));
+    assertEquals(42, PackedPositions.column(packed));
+    assertEquals(new Position(4711, 42), PackedPositions.toPosition(packed));
+  }
+
+  public void testOrderedLikePositions() {
+    assertTrue(PackedPositions.pack(1, 100) < PackedPositions.pack(2, 0));
+    assertTrue(PackedPositions.pack(2, 0) < PackedPositions.pack(2, 1));
+    assertTrue(PackedPositions.pack(0, Integer.MAX_VALUE) < PackedPositions.pack(1, 0));
+  }
+}
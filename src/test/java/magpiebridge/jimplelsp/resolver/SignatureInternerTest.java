@@ -0,0 +1,31 @@
+package magpiebridge.jimplelsp.resolver;
+
+import de.upb.swt.soot.core.types.ClassType;
+import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
+import java.nio.file.Paths;
+import junit.framework.TestCase;
+import org.eclipse.lsp4j.Position;
+
+public class SignatureInternerTest extends TestCase {
+
+  public void testEqualSignaturesShareAnInstance() {
+    // each file has its own util i.e. its own instances
+    final ClassType first = new JimpleConverterUtil(Paths.get("A.jimple")).getClassType("de.upb.A");
+    final ClassType second =
+        new JimpleConverterUtil(Paths.get("B.jimple")).getClassType("de.upb.A");
+    assertNotSame(first, second);
+    assertSame(SignatureInterner.intern(first), SignatureInterner.intern(second));
+  }
+
+  public void testContainerResolvesEqualSignature() {
+    final ClassType declared =
+        new JimpleConverterUtil(Paths.get("A.jimple")).getClassType("de.upb.Interned");
+    final ClassType query =
+        new JimpleConverterUtil(Paths.get("B.jimple")).getClassType("de.upb.Interned");
+    final SignatureRangeContainer container = new SignatureRangeContainer();
+    container.add(0, 6, 0, 20, declared);
+    assertEquals(1, container.resolve(query).size());
+    assertSame(
+        SignatureInterner.intern(query), container.resolve(new Position(0, 8)).getLeft());
+  }
+}
@@ -0,0 +1,65 @@
+package magpiebridge.jimplelsp.resolver;
+
+import de.upb.swt.soot.core.signatures.Signature;
+import de.upb.swt.soot.core.types.ClassType;
+import de.upb.swt.soot.jimple.parser.JimpleConverterUtil;
+import java.nio.file.Paths;
+import junit.framework.TestCase;
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+
+public class SignatureRangeContainerTest extends TestCase {
+
+  private final JimpleConverterUtil util = new JimpleConverterUtil(Paths.get("test.jimple"));
+  private final ClassType outer = util.getClassType("de.upb.Outer");
+  private final ClassType inner = util.getClassType("de.upb.Inner");
+  private final ClassType other = util.getClassType("de.upb.Other");
+
+  public void testNestedAndDuplicateStarts() {
+    final SignatureRangeContainer container = new SignatureRangeContainer();
+    container.add(1, 0, 1, 20, outer);
+    container.add(1, 5, 1, 10, inner);
+    // same start as inner - not in parse order
+    container.add(1, 5, 1, 8, other);
+    container.add(0, 0, 0, 3, other);
+
+    assertEquals(outer, resolve(container, 1, 2));
+    assertEquals(outer, resolve(container, 1, 15));
+    assertEquals(inner, resolve(container, 1, 9));
+    // the innermost of the occurences starting at the same position
+    assertEquals(other, resolve(container, 1, 6));
+    assertEquals(other, resolve(container, 0, 2));
+    assertNull(container.resolve(new Position(0, 4)));
+    assertNull(container.resolve(new Position(2, 0)));
+  }
+
+  public void testOverlapping() {
+    final SignatureRangeContainer container = new SignatureRangeContainer();
+    container.add(3, 0, 3, 10, outer);
+    container.add(3, 5, 3, 15, inner);
+
+    assertEquals(outer, resolve(container, 3, 2));
+    assertEquals(inner, resolve(container, 3, 7));
+    assertEquals(inner, resolve(container, 3, 12));
+    assertEquals(
+        new Range(new Position(3, 5), new Position(3, 15)),
+        container.resolve(new Position(3, 12)).getRight());
+  }
+
+  public void testManyOccurences() {
+    final SignatureRangeContainer container = new SignatureRangeContainer();
+    for (int line = 0; line < 100_000; line++) {
+      container.add(line, 4, line, 10, line % 2 == 0 ? outer : inner);
+    }
+    assertEquals(outer, resolve(container, 4242, 4));
+    assertEquals(inner, resolve(container, 4243, 10));
+    assertNull(container.resolve(new Position(4243, 11)));
+    assertEquals(50_000, container.resolve(inner).size());
+  }
+
+  private static Signature resolve(SignatureRangeContainer container, int line, int column) {
+    final Pair<Signature, Range> occurence = container.resolve(new Position(line, column));
+    return occurence == null ? null : occurence.getLeft();
+  }
+}